@@ -0,0 +1,110 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * TLS handshake benchmark: every request on a new connection
+ * ("Connection: close"), full handshakes or resumed sessions.
+ *
+ * Usage: java HandshakeBench.java &lt;https URL&gt; [connections] [seconds] [full|resume]
+ */
+public class HandshakeBench {
+
+	public static void main(String[] args) throws Exception {
+		URI     uri         = URI.create(args[0]);
+		int     connections = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		long    seconds     = args.length > 2 ? Long.parseLong(args[2]) : 10;
+		boolean resume      = args.length > 3 && args[3].equals("resume");
+
+		String path    = uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: " + uri.getHost() + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+		/* self-signed server certificate */
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, new TrustManager[] { new X509TrustManager() {
+
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		} }, null);
+		SSLSocketFactory factory = context.getSocketFactory();
+
+		long       to          = System.nanoTime() + seconds * 1_000_000_000L;
+		AtomicLong handshakes  = new AtomicLong();
+		AtomicLong errors      = new AtomicLong();
+		String[]   cipherSuite = new String[1];
+		Thread[]   clients     = new Thread[connections];
+		for (int c = 0; c < connections; c++) {
+			clients[c] = new Thread(() -> {
+				byte[] buffer = new byte[8192];
+				while (System.nanoTime() < to)
+					try (SSLSocket socket = (SSLSocket) factory.createSocket(uri.getHost(), uri.getPort())) {
+						socket.startHandshake();
+						OutputStream os = socket.getOutputStream();
+						os.write(request);
+						os.flush();
+						InputStream is = socket.getInputStream();
+						while (is.read(buffer) != -1) // response and the session tickets
+							;
+						cipherSuite[0] = socket.getSession().getCipherSuite();
+						if (!resume) // next handshake is a full one
+							socket.getSession().invalidate();
+						handshakes.incrementAndGet();
+					} catch (IOException e) {
+						errors.incrementAndGet();
+					}
+			});
+			clients[c].start();
+		}
+		for (Thread client : clients)
+			client.join();
+
+		System.out.printf("handshakes/s: %.0f  errors: %d  %s%n", handshakes.get() / (double) seconds, errors.get(), cipherSuite[0]);
+	}
+}
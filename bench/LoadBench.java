@@ -0,0 +1,216 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/1.1 keep-alive load generator for the connector presets ("bench.sh").
+ *
+ * Every client thread keeps one connection open and sends GET requests back
+ * to back (closed loop); the throughput, the latency percentiles and the
+ * errors are printed after the measured period.
+ *
+ * Usage: java LoadBench.java &lt;URL&gt; [connections] [seconds] [warm-up seconds]
+ */
+public class LoadBench {
+
+	private static final int MAX_SAMPLES = 1 << 20; // per client
+
+	public static void main(String[] args) throws Exception {
+		URI  uri         = URI.create(args[0]);
+		int  connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		long seconds     = args.length > 2 ? Long.parseLong(args[2]) : 10;
+		long warmUp      = args.length > 3 ? Long.parseLong(args[3]) : 3;
+
+		String path    = uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: " + uri.getHost() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+		long       start    = System.nanoTime();
+		long       from     = start + warmUp * 1_000_000_000L;
+		long       to       = from + seconds * 1_000_000_000L;
+		AtomicLong errors   = new AtomicLong();
+		long[][]   samples  = new long[connections][];
+		int[]      counts   = new int[connections];
+		long[]     bytes    = new long[connections];
+		Thread[]   clients  = new Thread[connections];
+		for (int c = 0; c < connections; c++) {
+			int client = c;
+			samples[c] = new long[MAX_SAMPLES];
+			clients[c] = new Thread(() -> {
+				Connection connection = null;
+				while (System.nanoTime() < to)
+					try {
+						if (connection == null)
+							connection = new Connection(uri.getHost(), uri.getPort());
+						long t0 = System.nanoTime();
+						boolean served = connection.exchange(request);
+						long    t1     = System.nanoTime();
+						if (served && t0 >= from && t1 <= to && counts[client] < MAX_SAMPLES) {
+							samples[client][counts[client]++] = t1 - t0;
+							bytes[client] += connection.bodyLength;
+						}
+						if (!served || connection.closed) { // keep-alive timeout or limit
+							connection.close();
+							connection = null;
+						}
+					} catch (IOException e) {
+						if (System.nanoTime() >= from)
+							errors.incrementAndGet();
+						if (connection != null)
+							connection.close();
+						connection = null;
+					}
+				if (connection != null)
+					connection.close();
+			});
+			clients[c].start();
+		}
+		for (Thread client : clients)
+			client.join();
+
+		int  total      = 0;
+		long totalBytes = 0;
+		for (int c = 0; c < connections; c++) {
+			total      += counts[c];
+			totalBytes += bytes[c];
+		}
+		long[] all = new long[total];
+		for (int c = 0, pos = 0; c < connections; pos += counts[c++])
+			System.arraycopy(samples[c], 0, all, pos, counts[c]);
+		Arrays.sort(all);
+
+		System.out.printf("requests/s: %.0f  MB/s: %.1f  p50: %.2f ms  p99: %.2f ms  max: %.2f ms  errors: %d%n", total / (double) seconds, totalBytes / 1e6 / seconds, percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6, errors.get());
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))] / 1e6;
+	}
+
+	/**
+	 * Keep-alive connection
+	 */
+	private static class Connection {
+
+		private final Socket       socket;
+		private final InputStream  is;
+		private final OutputStream os;
+
+		private boolean closed;
+		private long    bodyLength; // of the last response
+
+		Connection(String host, int port) throws IOException {
+			socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port));
+			is = new BufferedInputStream(socket.getInputStream());
+			os = socket.getOutputStream();
+		}
+
+		/**
+		 * Send the request, read the response (Content-Length or chunked body)
+		 *
+		 * @return false if the connection was closed before the response, the
+		 *         connection is marked closed if the server closes it after the
+		 *         response
+		 */
+		boolean exchange(byte[] request) throws IOException {
+			os.write(request);
+			os.flush();
+
+			String status = readLine();
+			if (status == null)
+				return false;
+			if (!status.startsWith("HTTP/1.1 2"))
+				throw new IOException(status);
+			long    length  = -1;
+			boolean chunked = false;
+			boolean close   = false;
+			for (String header; (header = readLine()) != null && !header.isEmpty();) {
+				String lower = header.toLowerCase();
+				if (lower.startsWith("content-length:"))
+					length = Long.parseLong(lower.substring(15).trim());
+				else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked"))
+					chunked = true;
+				else if (lower.startsWith("connection:") && lower.contains("close"))
+					close = true;
+			}
+			bodyLength = 0;
+			if (chunked) {
+				for (long size; (size = Long.parseLong(readLine().trim(), 16)) > 0; readLine()) {
+					skip(size);
+					bodyLength += size;
+				}
+				readLine();
+			} else if (length > 0) {
+				skip(length);
+				bodyLength = length;
+			}
+			closed = close;
+			return true;
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore exception
+			}
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			for (int b; (b = is.read()) != '\n';) {
+				if (b == -1)
+					return sb.length() == 0 ? null : sb.toString();
+				if (b != '\r')
+					sb.append((char) b);
+			}
+			return sb.toString();
+		}
+
+		private void skip(long n) throws IOException {
+			while (n > 0) {
+				long skipped = is.skip(n);
+				if (skipped <= 0) {
+					if (is.read() == -1)
+						throw new IOException("Unexpected end of response");
+					skipped = 1;
+				}
+				n -= skipped;
+			}
+		}
+	}
+}
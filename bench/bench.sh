@@ -0,0 +1,39 @@
+#!/bin/sh
+#
+# Load benchmark of the connector presets: starts Tommy with every
+# "--profile" (and without one) and drives it with LoadBench.
+#
+# Usage: bench/bench.sh <tommy.jar> <app> [path] [connections] [seconds]
+#
+# Example: bench/bench.sh RELEASE/tommy.jar MyKillerApp.war /index.html 256 30
+
+JAR=$1
+APP=$2
+URL_PATH=${3:-/}
+CONNECTIONS=${4:-64}
+DURATION=${5:-10}
+PORT=${PORT:-18080}
+BENCH_DIR=$(dirname "$0")
+
+if [ -z "$JAR" ] || [ -z "$APP" ]; then
+	echo "Usage: $0 <tommy.jar> <app> [path] [connections] [seconds]"
+	exit 1
+fi
+
+for PROFILE in default throughput latency low-memory; do
+	if [ "$PROFILE" = default ]; then
+		PROFILE_ARGS=
+	else
+		PROFILE_ARGS="--profile $PROFILE"
+	fi
+	java -jar "$JAR" --app "$APP" --port "$PORT" $PROFILE_ARGS > /dev/null 2>&1 &
+	PID=$!
+	while ! curl -s -o /dev/null "http://localhost:$PORT$URL_PATH"; do
+		sleep 0.1
+	done
+	RESULT=$(java "$BENCH_DIR/LoadBench.java" "http://localhost:$PORT$URL_PATH" "$CONNECTIONS" "$DURATION")
+	RSS=$(awk '/VmRSS/ { printf "%.0f MB", $2 / 1024 }' "/proc/$PID/status" 2>/dev/null)
+	printf '%-11s %s  rss: %s\n' "$PROFILE" "$RESULT" "${RSS:-n/a}"
+	kill $PID
+	wait $PID 2> /dev/null || true
+done
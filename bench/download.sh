@@ -0,0 +1,51 @@
+#!/bin/sh
+#
+# Large static download benchmark: serves a file of the given size with
+# sendfile, without it, and without it but with direct buffers, drives the
+# server with LoadBench and prints the server CPU time per GB sent.
+#
+# Usage: bench/download.sh <tommy.jar> [size MB] [connections] [seconds]
+#
+# Example: bench/download.sh RELEASE/tommy.jar 256 8 30
+
+JAR=$1
+SIZE_MB=${2:-64}
+CONNECTIONS=${3:-4}
+DURATION=${4:-10}
+PORT=${PORT:-18080}
+BENCH_DIR=$(dirname "$0")
+CLK_TCK=$(getconf CLK_TCK)
+
+if [ -z "$JAR" ]; then
+	echo "Usage: $0 <tommy.jar> [size MB] [connections] [seconds]"
+	exit 1
+fi
+
+APP=$(mktemp -d)
+trap 'rm -rf "$APP"' EXIT
+head -c "${SIZE_MB}M" /dev/urandom > "$APP/download.bin"
+
+cpu_ticks() {
+	awk '{ print $14 + $15 }' "/proc/$1/stat"
+}
+
+for MODE in sendfile copy copy-direct; do
+	case $MODE in
+	sendfile)    MODE_ARGS="--sendfile 48" ;;
+	copy)        MODE_ARGS="--sendfile -1" ;;
+	copy-direct) MODE_ARGS="--sendfile -1 --direct-buffers --app-buffer 65536" ;;
+	esac
+	java -jar "$JAR" --app "$APP" --port "$PORT" $MODE_ARGS > /dev/null 2>&1 &
+	PID=$!
+	while ! curl -s -o /dev/null "http://localhost:$PORT/"; do
+		sleep 0.1
+	done
+	TICKS=$(cpu_ticks $PID)
+	RESULT=$(java "$BENCH_DIR/LoadBench.java" "http://localhost:$PORT/download.bin" "$CONNECTIONS" "$DURATION" 0)
+	TICKS=$(($(cpu_ticks $PID) - TICKS))
+	MBS=$(echo "$RESULT" | sed 's/.*MB\/s: \([0-9.]*\).*/\1/')
+	CPU_PER_GB=$(awk -v t="$TICKS" -v hz="$CLK_TCK" -v mbs="$MBS" -v d="$DURATION" 'BEGIN { gb = mbs * d / 1000; printf "%.2f", (gb > 0 ? t / hz / gb : 0) }')
+	printf '%-11s %s  server cpu: %s s/GB\n' "$MODE" "$RESULT" "$CPU_PER_GB"
+	kill $PID
+	wait $PID 2> /dev/null || true
+done
@@ -0,0 +1,36 @@
+#!/bin/sh
+#
+# TLS handshake benchmark: starts Tommy with the bundled RSA key and with a
+# generated ECDSA P-256 key and drives it with HandshakeBench, full
+# handshakes and resumed sessions.
+#
+# Usage: bench/handshake.sh <tommy.jar> <app> [path] [connections] [seconds]
+#
+# Example: bench/handshake.sh RELEASE/tommy.jar MyKillerApp.war /index.html 16 30
+
+JAR=$1
+APP=$2
+URL_PATH=${3:-/}
+CONNECTIONS=${4:-8}
+DURATION=${5:-10}
+PORT=${PORT:-18443}
+BENCH_DIR=$(dirname "$0")
+
+if [ -z "$JAR" ] || [ -z "$APP" ]; then
+	echo "Usage: $0 <tommy.jar> <app> [path] [connections] [seconds]"
+	exit 1
+fi
+
+for KEY in rsa ec; do
+	java -jar "$JAR" --app "$APP" --port-ssl "$PORT" --tls-key $KEY > /dev/null 2>&1 &
+	PID=$!
+	while ! curl -sk -o /dev/null "https://localhost:$PORT$URL_PATH"; do
+		sleep 0.1
+	done
+	for MODE in full resume; do
+		RESULT=$(java "$BENCH_DIR/HandshakeBench.java" "https://localhost:$PORT$URL_PATH" "$CONNECTIONS" "$DURATION" $MODE)
+		printf '%-3s %-6s %s\n' "$KEY" "$MODE" "$RESULT"
+	done
+	kill $PID
+	wait $PID 2> /dev/null || true
+done
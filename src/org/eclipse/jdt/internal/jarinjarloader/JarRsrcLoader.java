@@ -20,8 +20,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -29,6 +33,11 @@ import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.tommy.common.loader.CdsLauncher;
+import org.tommy.common.loader.ClassList;
+import org.tommy.common.loader.IndexedJarClassLoader;
+import org.tommy.common.loader.LibCache;
+
 /**
  * This class will be compiled into the binary jar-in-jar-loader.zip. This ZIP is used for the
  * "Runnable JAR File Exporter"
@@ -44,6 +53,7 @@ public class JarRsrcLoader {
 
 	public static void main(String[] args) throws ClassNotFoundException, IllegalArgumentException, IllegalAccessException, InvocationTargetException, SecurityException, NoSuchMethodException, IOException {
 		ManifestInfo mi = getManifestInfo();
+		launchCdsIfRequested(mi, args);
 		ClassLoader cl = Thread.currentThread().getContextClassLoader();
 		URL.setURLStreamHandlerFactory(new RsrcURLStreamHandlerFactory(cl));
 		URL[] rsrcUrls = new URL[mi.rsrcClassPath.length];
@@ -54,13 +64,52 @@ public class JarRsrcLoader {
 			else
 				rsrcUrls[i] = new URL(JIJConstants.JAR_INTERNAL_URL_PROTOCOL_WITH_COLON + rsrcPath + JIJConstants.JAR_INTERNAL_SEPARATOR);
 		}
-		ClassLoader jceClassLoader = new URLClassLoader(rsrcUrls, getParentClassLoader());
+		ClassLoader jceClassLoader = createIndexedClassLoader(mi.rsrcClassPath);
+		if (jceClassLoader == null)
+			jceClassLoader = new URLClassLoader(rsrcUrls, getParentClassLoader());
+		ClassList.startIfRequested(jceClassLoader);
 		Thread.currentThread().setContextClassLoader(jceClassLoader);
 		Class c = Class.forName(mi.rsrcMainClass, true, jceClassLoader);
 		Method main = c.getMethod(JIJConstants.MAIN_METHOD_NAME, args.getClass());
 		main.invoke((Object) null, new Object[] {args});
 	}
 
+	/**
+	 * Index the outer JAR and the nested JARs once and serve classes from the
+	 * memory-mapped archive (or from the nested JAR cache, if the
+	 * "tommy.lib.cache" system property is set). Falls back to the "rsrc:" URL
+	 * class loader (null is returned) when the loader is not started from a JAR
+	 * file.
+	 */
+	private static ClassLoader createIndexedClassLoader(String[] rsrcClassPath) throws InvocationTargetException, IllegalAccessException {
+		try {
+			Path jarPath = Paths.get(JarRsrcLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if (!Files.isRegularFile(jarPath))
+				return null;
+			String libCache = System.getProperty(LibCache.LIB_CACHE_PROPERTY);
+			return new IndexedJarClassLoader(jarPath, rsrcClassPath, libCache == null ? null : Paths.get(libCache), getParentClassLoader());
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			System.err.println("Indexed class loader is not available, falling back to URLClassLoader: " + e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/**
+	 * Run the main class in a child JVM with a class data sharing archive if
+	 * the "tommy.cds.dump" or "tommy.cds" system property is set (see
+	 * {@link CdsLauncher}) and exit with its exit code.
+	 */
+	private static void launchCdsIfRequested(ManifestInfo mi, String[] args) throws IOException {
+		try {
+			Path    jarPath = Paths.get(JarRsrcLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			Integer exit    = CdsLauncher.launchIfRequested(jarPath, mi.rsrcClassPath, mi.rsrcMainClass, args);
+			if (exit != null)
+				System.exit(exit.intValue());
+		} catch (URISyntaxException | InterruptedException e) {
+			throw new IOException("Unable to launch CDS JVM", e); //$NON-NLS-1$
+		}
+	}
+
 	private static ClassLoader getParentClassLoader() throws InvocationTargetException, IllegalAccessException {
 		// On Java8, it is ok to use a null parent class loader, but, starting with Java 9,
 		// we need to provide one that has access to the restricted list of packages that
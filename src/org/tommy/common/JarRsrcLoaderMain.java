@@ -28,13 +28,45 @@ E-Mail: xnbox.team@outlook.com
 package org.tommy.common;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Properties;
 
 import org.eclipse.jdt.internal.jarinjarloader.JarRsrcLoader;
+import org.tommy.common.loader.CdsLauncher;
+import org.tommy.common.loader.ClassList;
+import org.tommy.common.loader.LibCache;
 
 public class JarRsrcLoaderMain {
+
+	/**
+	 * cache extracted library JARs in the directory
+	 */
+	private static final String ARGS_LIB_CACHE_OPTION = "--lib-cache";
+
+	/**
+	 * create class data sharing archive (exit after the first request)
+	 */
+	private static final String ARGS_CDS_DUMP_OPTION = "--cds-dump";
+
+	/**
+	 * run with class data sharing archive
+	 */
+	private static final String ARGS_CDS_OPTION = "--cds";
+
+	/**
+	 * record class list of a training run
+	 */
+	private static final String ARGS_RECORD_CLASSES_OPTION = "--record-classes";
+
+	/**
+	 * preload classes from class list
+	 */
+	private static final String ARGS_PRELOAD_CLASSES_OPTION = "--preload-classes";
+
 	/**
 	 * The main method
 	 * 
@@ -53,6 +85,56 @@ public class JarRsrcLoaderMain {
 		String newArgs[] = new String[args.length + 1];
 		newArgs[0] = jarFileName;
 		System.arraycopy(args, 0, newArgs, 1, args.length);
+
+		setProperty(args, ARGS_LIB_CACHE_OPTION, LibCache.LIB_CACHE_PROPERTY);
+		setProperty(args, ARGS_CDS_DUMP_OPTION, CdsLauncher.CDS_DUMP_PROPERTY);
+		setProperty(args, ARGS_CDS_OPTION, CdsLauncher.CDS_PROPERTY);
+		setProperty(args, ARGS_RECORD_CLASSES_OPTION, ClassList.RECORD_CLASSES_PROPERTY);
+		setProperty(args, ARGS_PRELOAD_CLASSES_OPTION, ClassList.PRELOAD_CLASSES_PROPERTY);
+
 		JarRsrcLoader.main(newArgs);
 	}
+
+	/**
+	 * Set the loader system property from the command line option, unless it is
+	 * already set
+	 *
+	 * @param args
+	 * @param option   command line option, e.g. "--lib-cache"
+	 * @param property system property, e.g. "tommy.lib.cache"
+	 */
+	private static void setProperty(String[] args, String option, String property) {
+		String value = getOption(args, option, property);
+		if (value != null)
+			System.setProperty(property, value);
+	}
+
+	/**
+	 * Loader option: command line option, system property or key of the
+	 * "META-INF/system.properties" resource
+	 *
+	 * @param args
+	 * @param option
+	 * @param property
+	 * @return value or null
+	 */
+	private static String getOption(String[] args, String option, String property) {
+		for (int i = 0; i < args.length - 1; i++)
+			if (args[i].equals(option))
+				return args[i + 1];
+
+		String value = System.getProperty(property);
+		if (value != null)
+			return value;
+
+		try (InputStream is = JarRsrcLoaderMain.class.getClassLoader().getResourceAsStream("META-INF/system.properties")) {
+			if (is == null)
+				return null;
+			Properties properties = new Properties();
+			properties.load(new InputStreamReader(is, StandardCharsets.UTF_8));
+			return properties.getProperty(property);
+		} catch (IOException e) {
+			return null;
+		}
+	}
 }
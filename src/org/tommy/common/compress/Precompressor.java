@@ -0,0 +1,242 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceRoot.ResourceSetType;
+import org.apache.catalina.Wrapper;
+import org.tommy.common.utils.AppCache;
+import org.tommy.common.utils.CacheUtils;
+
+/**
+ * Compresses the static text resources of the context (HTML, CSS, JS, SVG,
+ * etc.) in parallel when it starts and lets the "default" servlet serve the
+ * compressed variants ("precompressed"), so no CPU is spent on compressing
+ * them per request.
+ *
+ * The ".gz" files are written to "&lt;cache&gt;/&lt;key&gt;/", not to the
+ * app, the key is a digest of the paths, sizes and last modified times of the
+ * compressed resources, so a later start of the same app reuses them. The
+ * directory is mounted as post resources at "/", the ".gz" (and ".br")
+ * files shipped with the app take precedence.
+ */
+public class Precompressor implements LifecycleListener {
+
+	/**
+	 * Name of the cache directory in the temp or app cache directory
+	 */
+	public static final String CACHE_DIR = "tommy-gzip";
+
+	/**
+	 * Compressed variants served by the "default" servlet in the order of
+	 * preference, Brotli only if shipped with the app (no encoder in the JDK)
+	 */
+	private static final String PRECOMPRESSED = "br=.br,gzip=.gz";
+
+	private static final String   DEFAULT_SERVLET_NAME = "default";
+	private static final String   GZIP_EXT             = ".gz";
+	private static final String[] EXTS                 = { ".html", ".htm", ".css", ".js", ".mjs", ".json", ".map", ".svg", ".xml", ".txt", ".csv", ".md", ".wasm", ".ttf", ".otf", ".eot", ".ico" };
+	private static final String[] SKIP_DIRS            = { "/WEB-INF/", "/META-INF/" };
+	private static final long     MIN_SIZE             = 1024;
+	private static final double   MIN_RATIO            = 0.9; // keep if at least 10% smaller
+
+	private final Path   cacheDir;
+	private final Logger logger;
+
+	private Precompressor(Path cacheDir, Logger logger) {
+		this.cacheDir = cacheDir;
+		this.logger   = logger;
+	}
+
+	/**
+	 * Precompress the static resources of the context on start
+	 *
+	 * @param ctx
+	 * @param cacheDir
+	 * @param logger
+	 */
+	public static void install(Context ctx, Path cacheDir, Logger logger) {
+		ctx.addLifecycleListener(new Precompressor(cacheDir, logger));
+	}
+
+	@Override
+	public void lifecycleEvent(LifecycleEvent event) {
+		if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType()))
+			configure((Context) event.getLifecycle());
+	}
+
+	/**
+	 * Compress the resources, mount them and turn on the precompressed variants
+	 * of the "default" servlet (the resources are started, the servlet is not
+	 * initialized yet)
+	 */
+	private void configure(Context ctx) {
+		Wrapper defaultServlet = (Wrapper) ctx.findChild(DEFAULT_SERVLET_NAME);
+		if (defaultServlet == null)
+			return;
+
+		WebResourceRoot resources = ctx.getResources();
+		List<String>    paths     = new ArrayList<>();
+		listFiles(resources, "/", paths);
+		paths.sort(null);
+
+		AppCache.Key key = new AppCache.Key().add(MIN_SIZE).add(MIN_RATIO);
+		for (String path : paths) {
+			WebResource resource = resources.getResource(path);
+			key.add(path).add(resource.getContentLength()).add(resource.getLastModified());
+		}
+
+		try {
+			Path gzipDir = cacheDir.resolve(key.toString());
+			if (!Files.isDirectory(gzipDir))
+				compress(resources, paths, gzipDir);
+			resources.createWebResourceSet(ResourceSetType.POST, "/", gzipDir.toString(), null, "/");
+			defaultServlet.addInitParameter("precompressed", PRECOMPRESSED);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to precompress static resources", e);
+		}
+	}
+
+	/**
+	 * Compress the resources in parallel to a temp directory, then rename it
+	 * to gzipDir (another JVM may do the same). Nothing is published if a
+	 * resource fails or the wait is interrupted: the key would stay the same, so
+	 * a partial directory would never be completed.
+	 */
+	private void compress(WebResourceRoot resources, List<String> paths, Path gzipDir) throws IOException {
+		long          start   = System.nanoTime();
+		Path          tmpDir  = CacheUtils.createTempDirectory(cacheDir);
+		AtomicInteger next    = new AtomicInteger();
+		AtomicInteger count   = new AtomicInteger();
+		AtomicBoolean failed  = new AtomicBoolean();
+		int           threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), paths.size()));
+		ForkJoinPool  pool    = new ForkJoinPool(threads);
+		for (int i = 0; i < threads; i++)
+			pool.execute(() -> {
+				for (int j; !failed.get() && (j = next.getAndIncrement()) < paths.size();) {
+					String path = paths.get(j);
+					try {
+						if (compress(resources.getResource(path), tmpDir.resolve(path.substring(1) + GZIP_EXT)))
+							count.incrementAndGet();
+					} catch (IOException | RuntimeException e) {
+						logger.log(Level.WARNING, "Unable to compress resource: " + path, e);
+						failed.set(true);
+					}
+				}
+			});
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			CacheUtils.discard(tmpDir); // workers may still be writing, leftovers are temp files
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while precompressing");
+		}
+		if (failed.get()) {
+			CacheUtils.discard(tmpDir);
+			throw new IOException("Unable to compress " + (paths.size() - count.get()) + " of " + paths.size() + " resources, not cached");
+		}
+
+		CacheUtils.publish(tmpDir, gzipDir);
+		logger.log(Level.INFO, "Static resources precompressed: " + count + " of " + paths.size() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+
+	/**
+	 * @return false if the resource doesn't compress well (nothing written)
+	 */
+	private static boolean compress(WebResource resource, Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		try {
+			try (InputStream is = resource.getInputStream(); OutputStream os = new GZIPOutputStream(Files.newOutputStream(target)) {
+				{
+					def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			}) {
+				is.transferTo(os);
+			}
+			if (Files.size(target) <= resource.getContentLength() * MIN_RATIO)
+				return true;
+		} catch (IOException | RuntimeException e) {
+			CacheUtils.discard(target); // no truncated ".gz"
+			throw e;
+		}
+		Files.delete(target);
+		return false;
+	}
+
+	private static void listFiles(WebResourceRoot resources, String dir, List<String> result) {
+		Set<String> paths = resources.listWebAppPaths(dir);
+		if (paths == null)
+			return;
+		for (String path : paths)
+			if (path.endsWith("/")) {
+				if (!startsWith(path, SKIP_DIRS))
+					listFiles(resources, path, result);
+			} else if (endsWith(path, EXTS) && resources.getResource(path).getContentLength() >= MIN_SIZE)
+				result.add(path);
+	}
+
+	private static boolean startsWith(String path, String[] prefixes) {
+		for (String prefix : prefixes)
+			if (path.startsWith(prefix))
+				return true;
+		return false;
+	}
+
+	private static boolean endsWith(String path, String[] exts) {
+		for (String ext : exts)
+			if (path.endsWith(ext))
+				return true;
+		return false;
+	}
+}
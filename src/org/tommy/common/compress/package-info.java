@@ -0,0 +1 @@
+package org.tommy.common.compress;
\ No newline at end of file
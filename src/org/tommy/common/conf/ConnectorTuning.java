@@ -0,0 +1,360 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.conf;
+
+import org.tommy.common.net.ReusePortNioProtocol;
+import org.tommy.common.threads.VirtualThreadExecutor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Connector, HTTP/2 and thread pool settings ("--max-threads",
+ * "--keep-alive", "--h2-streams", etc.) and the named presets of them
+ * ("--profile"). Unset values keep the Apache Tomcat defaults.
+ */
+public class ConnectorTuning {
+
+	/**
+	 * many concurrent keep-alive clients, large buffers
+	 */
+	public static final String PROFILE_THROUGHPUT = "throughput";
+
+	/**
+	 * warm threads, short queues, requests are not left waiting in the backlog
+	 */
+	public static final String PROFILE_LATENCY    = "latency";
+
+	/**
+	 * few threads and connections, small buffers
+	 */
+	public static final String PROFILE_LOW_MEMORY = "low-memory";
+
+	/**
+	 * name of the thread pool shared by the connectors
+	 */
+	public static final String EXECUTOR_NAME      = "tomcatThreadPool";
+
+	/* Tomcat defaults */
+	private static final int DEFAULT_MAX_THREADS       = 200;
+	private static final int DEFAULT_MIN_SPARE_THREADS = 25;
+
+	private Integer maxThreads;
+	private Integer minSpareThreads;
+	private Integer maxConnections;
+	private Integer acceptCount;
+	private Integer keepAliveTimeout;
+	private Integer maxKeepAliveRequests;
+	private Integer socketBufferSize;
+	private boolean virtualThreads;
+	private boolean reusePort;
+	private boolean h2c;
+	private Integer http2MaxConcurrentStreams;
+	private Integer http2InitialWindowSize;
+	private Integer http2OverheadCountFactor;
+	private Integer http2OverheadDataThreshold;
+	private Integer http2OverheadWindowUpdateThreshold;
+	private Integer http2OverheadContinuationThreshold;
+	private Integer sendfileSize;
+	private boolean directBuffers;
+	private Integer appBufferSize;
+
+	public void setMaxThreads(Integer maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public void setMinSpareThreads(Integer minSpareThreads) {
+		this.minSpareThreads = minSpareThreads;
+	}
+
+	public void setMaxConnections(Integer maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public void setAcceptCount(Integer acceptCount) {
+		this.acceptCount = acceptCount;
+	}
+
+	/**
+	 * @param keepAliveTimeout milliseconds
+	 */
+	public void setKeepAliveTimeout(Integer keepAliveTimeout) {
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+	/**
+	 * @param maxKeepAliveRequests -1 for unlimited
+	 */
+	public void setMaxKeepAliveRequests(Integer maxKeepAliveRequests) {
+		this.maxKeepAliveRequests = maxKeepAliveRequests;
+	}
+
+	/**
+	 * @param socketBufferSize receive and send socket buffer size in bytes
+	 */
+	public void setSocketBufferSize(Integer socketBufferSize) {
+		this.socketBufferSize = socketBufferSize;
+	}
+
+	/**
+	 * @param sendfileSize minimal size (KB) of the static files sent with
+	 *                     sendfile (FileChannel.transferTo), negative to
+	 *                     disable sendfile
+	 */
+	public void setSendfileSize(Integer sendfileSize) {
+		this.sendfileSize = sendfileSize;
+	}
+
+	/**
+	 * @param directBuffers off-heap socket read and write buffers
+	 */
+	public void setDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+	}
+
+	/**
+	 * @param appBufferSize size of the socket read and write buffers of the
+	 *                      connector in bytes
+	 */
+	public void setAppBufferSize(Integer appBufferSize) {
+		this.appBufferSize = appBufferSize;
+	}
+
+	/**
+	 * @param virtualThreads run the requests on virtual threads (see
+	 *                       {@link VirtualThreadExecutor}), the thread counts
+	 *                       don't apply then
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * @param reusePort listen with SO_REUSEPORT (see {@link ReusePortNioProtocol})
+	 */
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+
+	/**
+	 * @param h2c HTTP/2 on the plain connector (upgrade and prior knowledge)
+	 */
+	public void setH2c(boolean h2c) {
+		this.h2c = h2c;
+	}
+
+	public boolean isH2c() {
+		return h2c;
+	}
+
+	public void setHttp2MaxConcurrentStreams(Integer http2MaxConcurrentStreams) {
+		this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+	}
+
+	/**
+	 * @param http2InitialWindowSize flow control window of the streams in bytes
+	 */
+	public void setHttp2InitialWindowSize(Integer http2InitialWindowSize) {
+		this.http2InitialWindowSize = http2InitialWindowSize;
+	}
+
+	/**
+	 * @param http2OverheadCountFactor weight of the overhead frames, 0
+	 *                                 disables the overhead protection
+	 */
+	public void setHttp2OverheadCountFactor(Integer http2OverheadCountFactor) {
+		this.http2OverheadCountFactor = http2OverheadCountFactor;
+	}
+
+	/**
+	 * @param http2OverheadDataThreshold DATA frames smaller than this (bytes)
+	 *                                   count as overhead
+	 */
+	public void setHttp2OverheadDataThreshold(Integer http2OverheadDataThreshold) {
+		this.http2OverheadDataThreshold = http2OverheadDataThreshold;
+	}
+
+	/**
+	 * @param http2OverheadWindowUpdateThreshold WINDOW_UPDATE frames smaller
+	 *                                           than this (bytes) count as
+	 *                                           overhead
+	 */
+	public void setHttp2OverheadWindowUpdateThreshold(Integer http2OverheadWindowUpdateThreshold) {
+		this.http2OverheadWindowUpdateThreshold = http2OverheadWindowUpdateThreshold;
+	}
+
+	/**
+	 * @param http2OverheadContinuationThreshold CONTINUATION frames smaller
+	 *                                           than this (bytes) count as
+	 *                                           overhead
+	 */
+	public void setHttp2OverheadContinuationThreshold(Integer http2OverheadContinuationThreshold) {
+		this.http2OverheadContinuationThreshold = http2OverheadContinuationThreshold;
+	}
+
+	/**
+	 * Fill the values not set explicitly from the preset
+	 *
+	 * @param profile {@link #PROFILE_THROUGHPUT}, {@link #PROFILE_LATENCY} or {@link #PROFILE_LOW_MEMORY}
+	 * @throws IllegalArgumentException unknown profile
+	 */
+	public void applyProfile(String profile) {
+		//@formatter:off
+		switch (profile) {
+		case PROFILE_THROUGHPUT: fill(400, 25,  20000, 1000, 60000, -1,   65536); break;
+		case PROFILE_LATENCY:    fill(200, 100, 10000, 100,  20000, 1000, null);  break;
+		case PROFILE_LOW_MEMORY: fill(25,  2,   1000,  50,   5000,  100,  8192);  break;
+		default:
+			throw new IllegalArgumentException("Unknown profile: " + profile);
+		}
+		//@formatter:on
+	}
+
+	private void fill(int maxThreads, int minSpareThreads, int maxConnections, int acceptCount, int keepAliveTimeout, int maxKeepAliveRequests, Integer socketBufferSize) {
+		if (this.maxThreads == null)
+			this.maxThreads = maxThreads;
+		if (this.minSpareThreads == null)
+			this.minSpareThreads = Math.min(minSpareThreads, this.maxThreads);
+		if (this.maxConnections == null)
+			this.maxConnections = maxConnections;
+		if (this.acceptCount == null)
+			this.acceptCount = acceptCount;
+		if (this.keepAliveTimeout == null)
+			this.keepAliveTimeout = keepAliveTimeout;
+		if (this.maxKeepAliveRequests == null)
+			this.maxKeepAliveRequests = maxKeepAliveRequests;
+		if (this.socketBufferSize == null)
+			this.socketBufferSize = socketBufferSize;
+	}
+
+	/**
+	 * @return true if the connectors should share a thread pool
+	 */
+	public boolean hasExecutor() {
+		return virtualThreads || maxThreads != null || minSpareThreads != null;
+	}
+
+	/**
+	 * Set the attributes of the shared thread pool ("Executor" element of
+	 * "server.xml")
+	 *
+	 * @param executorEl
+	 */
+	public void applyToExecutor(Element executorEl) {
+		executorEl.setAttribute("name", EXECUTOR_NAME);
+		if (virtualThreads) {
+			executorEl.setAttribute("className", VirtualThreadExecutor.class.getName());
+			executorEl.setAttribute("namePrefix", "catalina-vexec-");
+			return;
+		}
+		executorEl.setAttribute("namePrefix", "catalina-exec-");
+		int max = maxThreads == null ? DEFAULT_MAX_THREADS : maxThreads;
+		executorEl.setAttribute("maxThreads", Integer.toString(max));
+		executorEl.setAttribute("minSpareThreads", Integer.toString(Math.min(minSpareThreads == null ? DEFAULT_MIN_SPARE_THREADS : minSpareThreads, max)));
+	}
+
+	/**
+	 * Set the attributes of the connector ("Connector" element of "server.xml")
+	 *
+	 * @param connectorEl
+	 */
+	public void applyToConnector(Element connectorEl) {
+		if (reusePort)
+			connectorEl.setAttribute("protocol", ReusePortNioProtocol.class.getName());
+		if (hasExecutor())
+			connectorEl.setAttribute("executor", EXECUTOR_NAME);
+		setAttribute(connectorEl, "maxConnections", maxConnections);
+		setAttribute(connectorEl, "acceptCount", acceptCount);
+		setAttribute(connectorEl, "keepAliveTimeout", keepAliveTimeout);
+		setAttribute(connectorEl, "maxKeepAliveRequests", maxKeepAliveRequests);
+		setAttribute(connectorEl, "socket.rxBufSize", socketBufferSize);
+		setAttribute(connectorEl, "socket.txBufSize", socketBufferSize);
+		setAttribute(connectorEl, "socket.appReadBufSize", appBufferSize);
+		setAttribute(connectorEl, "socket.appWriteBufSize", appBufferSize);
+		if (directBuffers) {
+			connectorEl.setAttribute("socket.directBuffer", Boolean.toString(true));
+			connectorEl.setAttribute("socket.directSslBuffer", Boolean.toString(true));
+		}
+		if (sendfileSize != null && sendfileSize < 0)
+			connectorEl.setAttribute("useSendfile", Boolean.toString(false));
+	}
+
+	/**
+	 * @return true if the "default" servlet is configured too (see
+	 *         {@link #applyToDefaultServlet})
+	 */
+	public boolean hasDefaultServletSettings() {
+		return sendfileSize != null;
+	}
+
+	/**
+	 * Add the init parameters of the "default" servlet ("servlet" element of
+	 * "web.xml")
+	 *
+	 * @param servletEl
+	 */
+	public void applyToDefaultServlet(Element servletEl) {
+		if (sendfileSize != null)
+			addInitParam(servletEl, "sendfileSize", Integer.toString(sendfileSize));
+	}
+
+	/**
+	 * Set the attributes of the HTTP/2 protocol ("UpgradeProtocol" element of
+	 * "server.xml")
+	 *
+	 * @param upgradeProtocolEl
+	 */
+	public void applyToHttp2(Element upgradeProtocolEl) {
+		setAttribute(upgradeProtocolEl, "maxConcurrentStreams", http2MaxConcurrentStreams);
+		setAttribute(upgradeProtocolEl, "initialWindowSize", http2InitialWindowSize);
+		setAttribute(upgradeProtocolEl, "overheadCountFactor", http2OverheadCountFactor);
+		setAttribute(upgradeProtocolEl, "overheadDataThreshold", http2OverheadDataThreshold);
+		setAttribute(upgradeProtocolEl, "overheadWindowUpdateThreshold", http2OverheadWindowUpdateThreshold);
+		setAttribute(upgradeProtocolEl, "overheadContinuationThreshold", http2OverheadContinuationThreshold);
+	}
+
+	private static void addInitParam(Element servletEl, String name, String value) {
+		Document doc          = servletEl.getOwnerDocument();
+		Element  initParamEl  = doc.createElement("init-param");
+		Element  paramNameEl  = doc.createElement("param-name");
+		Element  paramValueEl = doc.createElement("param-value");
+		paramNameEl.setTextContent(name);
+		paramValueEl.setTextContent(value);
+		initParamEl.appendChild(paramNameEl);
+		initParamEl.appendChild(paramValueEl);
+
+		/* init-params precede "load-on-startup" */
+		Node loadOnStartupEl = servletEl.getElementsByTagName("load-on-startup").item(0);
+		servletEl.insertBefore(initParamEl, loadOnStartupEl);
+	}
+
+	private static void setAttribute(Element el, String name, Integer value) {
+		if (value != null)
+			el.setAttribute(name, Integer.toString(value));
+	}
+}
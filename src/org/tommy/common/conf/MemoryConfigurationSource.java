@@ -0,0 +1,103 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.conf;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.catalina.startup.CatalinaBaseConfigurationSource;
+import org.apache.catalina.startup.Constants;
+import org.apache.tomcat.util.file.ConfigurationSource;
+
+/**
+ * Apache Tomcat configuration source that serves the configuration files
+ * ("conf/server.xml", "conf/web.xml", "conf/context.xml", the keystore, etc.)
+ * from memory: patched documents are held as byte arrays, the other files
+ * are read straight from the bundled "META-INF/tomcat/conf" resources. Nothing
+ * is written to the "conf" directory, other names are resolved against the
+ * Catalina base directory.
+ */
+public class MemoryConfigurationSource implements ConfigurationSource {
+
+	private static final String RESOURCE_PREFIX = "META-INF/tomcat/";
+
+	private static ClassLoader cl = MemoryConfigurationSource.class.getClassLoader();
+
+	private final Map<String, byte[]> documents = new HashMap<>();
+
+	private ConfigurationSource catalinaBaseSource;
+
+	/**
+	 * Serve the content instead of the bundled file
+	 *
+	 * @param name    name relative to the Catalina base, e.g. "conf/server.xml"
+	 * @param content
+	 */
+	public void put(String name, byte[] content) {
+		documents.put(name, content);
+	}
+
+	@Override
+	public Resource getResource(String name) throws IOException {
+		byte[] content = documents.get(name);
+		if (content != null)
+			return new Resource(new ByteArrayInputStream(content), getURI(name));
+		URL url = cl.getResource(RESOURCE_PREFIX + name);
+		if (url != null)
+			return new Resource(url.openStream(), toUri(url, name));
+		return getCatalinaBaseSource().getResource(name);
+	}
+
+	@Override
+	public URI getURI(String name) {
+		URL url = cl.getResource(RESOURCE_PREFIX + name);
+		if (url != null)
+			return toUri(url, name);
+		return getCatalinaBaseSource().getURI(name);
+	}
+
+	private synchronized ConfigurationSource getCatalinaBaseSource() {
+		if (catalinaBaseSource == null)
+			catalinaBaseSource = new CatalinaBaseConfigurationSource(new File(System.getProperty(Constants.CATALINA_BASE_PROP)), null);
+		return catalinaBaseSource;
+	}
+
+	private static URI toUri(URL url, String name) {
+		try {
+			return url.toURI();
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException(name, e);
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.conf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.tommy.common.utils.CacheUtils;
+import org.w3c.dom.Element;
+
+/**
+ * Key and TLS session settings of the HTTPS connector ("--tls-key",
+ * "--keystore", "--tls-cache", etc.).
+ *
+ * The default key is the bundled RSA one. The ECDSA P-256 key ("ec") is
+ * generated with "keytool" on the first start and kept in
+ * "&lt;cache&gt;/localhost-ec/" (PKCS12 keystore and its random password), so
+ * the server processes sharing the cache directory use the same certificate.
+ * The directory and its files are owner-only, a directory of another user is
+ * refused (it could hold a key known to that user).
+ */
+public class TlsSettings {
+
+	/**
+	 * Name of the cache directory in the temp or app cache directory
+	 */
+	public static final String CACHE_DIR = "tommy-tls";
+
+	/**
+	 * Bundled self-signed RSA key
+	 */
+	public static final String KEY_RSA = "rsa";
+
+	/**
+	 * Generated self-signed ECDSA P-256 key
+	 */
+	public static final String KEY_EC = "ec";
+
+	private static final String BUNDLED_KEYSTORE          = "conf/keystore/localhost-rsa.jks";
+	private static final String BUNDLED_KEYSTORE_PASSWORD = "changeit";
+
+	private static final String EC_DIR           = "localhost-ec";
+	private static final String EC_KEYSTORE      = "keystore.p12";
+	private static final String EC_PASSWORD      = "password.txt";
+	private static final String TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+	private static final Set<PosixFilePermission> OWNER_DIR  = PosixFilePermissions.fromString("rwx------");
+	private static final Set<PosixFilePermission> OWNER_FILE = PosixFilePermissions.fromString("rw-------");
+
+	private String  keyType = KEY_RSA;
+	private String  keystoreFile;
+	private String  keystorePassword;
+	private String  certificateType;
+	private Integer sessionCacheSize;
+	private Integer sessionTimeout;
+	private Boolean sessionTickets;
+
+	/**
+	 * @param keyType {@link #KEY_RSA} or {@link #KEY_EC}, ignored with a
+	 *                keystore file
+	 */
+	public void setKeyType(String keyType) {
+		this.keyType = keyType;
+	}
+
+	/**
+	 * @param keystoreFile keystore (JKS or PKCS12) with the key of the server
+	 */
+	public void setKeystoreFile(String keystoreFile) {
+		this.keystoreFile = keystoreFile;
+	}
+
+	public void setKeystorePassword(String keystorePassword) {
+		this.keystorePassword = keystorePassword;
+	}
+
+	/**
+	 * @param sessionCacheSize number of cached TLS sessions, 0 for unlimited
+	 */
+	public void setSessionCacheSize(Integer sessionCacheSize) {
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * @param sessionTimeout lifetime of the cached TLS sessions in seconds
+	 */
+	public void setSessionTimeout(Integer sessionTimeout) {
+		this.sessionTimeout = sessionTimeout;
+	}
+
+	/**
+	 * @param sessionTickets resume sessions with stateless tickets (RFC 5077,
+	 *                       TLS 1.3 PSK), null for the JVM default
+	 */
+	public void setSessionTickets(Boolean sessionTickets) {
+		this.sessionTickets = sessionTickets;
+	}
+
+	/**
+	 * Generate the key if needed and set up the JVM (call before the first TLS
+	 * connection of the JVM, e.g. an app download)
+	 *
+	 * @param cacheDir
+	 * @param logger
+	 * @throws IllegalArgumentException on unknown key type
+	 */
+	public void prepare(Path cacheDir, Logger logger) {
+		if (sessionTickets != null) // read once by JSSE
+			System.setProperty(TICKETS_PROPERTY, Boolean.toString(sessionTickets));
+
+		if (keystoreFile != null) { // relative to the current directory, not to the Catalina base
+			keystoreFile = Paths.get(keystoreFile).toAbsolutePath().toString();
+			return;
+		}
+		if (KEY_EC.equals(keyType))
+			try {
+				Path dir = getEcKeystore(cacheDir);
+				keystoreFile     = dir.resolve(EC_KEYSTORE).toString();
+				keystorePassword = new String(Files.readAllBytes(dir.resolve(EC_PASSWORD)), StandardCharsets.US_ASCII);
+				certificateType  = "EC";
+				return;
+			} catch (IOException | InterruptedException e) {
+				logger.log(Level.WARNING, "Unable to generate ECDSA key, using the bundled RSA key", e);
+			}
+		else if (!KEY_RSA.equals(keyType))
+			throw new IllegalArgumentException("Unknown key type: " + keyType + " (expected: " + KEY_RSA + " or " + KEY_EC + ')');
+		keystoreFile     = BUNDLED_KEYSTORE;
+		keystorePassword = BUNDLED_KEYSTORE_PASSWORD;
+		certificateType  = "RSA";
+	}
+
+	/**
+	 * Set the session attributes ("SSLHostConfig" element of "server.xml"),
+	 * session tickets are a JVM setting of JSSE (see {@link #prepare}),
+	 * "disableSessionTickets" is for OpenSSL only
+	 *
+	 * @param sslHostConfigEl
+	 */
+	public void applyToSslHostConfig(Element sslHostConfigEl) {
+		if (sessionCacheSize != null)
+			sslHostConfigEl.setAttribute("sessionCacheSize", Integer.toString(sessionCacheSize));
+		if (sessionTimeout != null)
+			sslHostConfigEl.setAttribute("sessionTimeout", Integer.toString(sessionTimeout));
+	}
+
+	/**
+	 * Set the keystore attributes ("Certificate" element of "server.xml"), see
+	 * {@link #prepare}
+	 *
+	 * @param certificateEl
+	 */
+	public void applyToCertificate(Element certificateEl) {
+		certificateEl.setAttribute("certificateKeystoreFile", keystoreFile);
+		if (keystorePassword != null)
+			certificateEl.setAttribute("certificateKeystorePassword", keystorePassword);
+		if (certificateType != null) // type of the user's key is found out by Tomcat
+			certificateEl.setAttribute("type", certificateType);
+	}
+
+	/**
+	 * Generated key directory, generated in a temp directory and renamed (other
+	 * JVMs may do the same, the first one wins)
+	 */
+	private static Path getEcKeystore(Path cacheDir) throws IOException, InterruptedException {
+		Path dir = cacheDir.resolve(EC_DIR);
+		if (!Files.isRegularFile(dir.resolve(EC_KEYSTORE))) {
+			Path    tmpDir = CacheUtils.createTempDirectory(cacheDir);
+			boolean posix  = tmpDir.getFileSystem().supportedFileAttributeViews().contains("posix");
+			try {
+				if (posix)
+					Files.setPosixFilePermissions(tmpDir, OWNER_DIR);
+				byte[] random = new byte[18];
+				new SecureRandom().nextBytes(random);
+				Path password = tmpDir.resolve(EC_PASSWORD);
+				if (posix)
+					Files.createFile(password, PosixFilePermissions.asFileAttribute(OWNER_FILE));
+				Files.write(password, Base64.getUrlEncoder().encode(random));
+
+				/* the password is read from the file, the command line is visible to the other users */
+				Path    keystore = tmpDir.resolve(EC_KEYSTORE);
+				String  keytool  = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+				Process process  = new ProcessBuilder(List.of(keytool, "-genkeypair", "-alias", "tomcat", "-keyalg", "EC", "-groupname", "secp256r1", "-sigalg", "SHA256withECDSA", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "3650", "-storetype", "PKCS12", "-keystore", keystore.toString(), "-storepass:file", password.toString(), "-keypass:file", password.toString())).redirectErrorStream(true).start();
+				String  output   = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+				if (process.waitFor() != 0)
+					throw new IOException("keytool failed: " + output.trim());
+				if (posix)
+					Files.setPosixFilePermissions(keystore, OWNER_FILE);
+
+				CacheUtils.publish(tmpDir, dir);
+			} finally {
+				CacheUtils.discard(tmpDir);
+			}
+		}
+		/* also when published by another JVM: the cache directory may be shared with other users */
+		checkOwner(cacheDir);
+		checkOwner(dir);
+		return dir;
+	}
+
+	private static void checkOwner(Path path) throws IOException {
+		UserPrincipal owner = Files.getOwner(path);
+		UserPrincipal user  = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+		if (!owner.equals(user))
+			throw new IOException("Owned by " + owner.getName() + ", not by " + user.getName() + ": " + path);
+	}
+}
@@ -0,0 +1 @@
+package org.tommy.common.conf;
\ No newline at end of file
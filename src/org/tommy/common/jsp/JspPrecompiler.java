@@ -0,0 +1,254 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.jsp;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.util.ServerInfo;
+import org.tommy.common.utils.AppCache;
+import org.tommy.common.utils.DigestUtils;
+
+import jakarta.servlet.Servlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Compiles all JSP files of the context in parallel when it starts, before
+ * the connectors accept requests.
+ *
+ * Jasper's scratch directory is "&lt;cache&gt;/&lt;key&gt;", the key is a
+ * digest of the Tomcat (Jasper) version, of the content of the JSP, tag
+ * and TLD files and of the paths, sizes and last modified times of the
+ * "WEB-INF/lib" JARs and "WEB-INF/classes" files, so a later start of the
+ * same app reuses the compiled classes. The JSP files are compiled by the "jsp" servlet itself, with
+ * "jsp_precompile" requests that compile and load the JSP without running it.
+ */
+public class JspPrecompiler implements LifecycleListener {
+
+	/**
+	 * Name of the cache directory in the temp or app cache directory
+	 */
+	public static final String CACHE_DIR = "tommy-jsp";
+
+	private static final String   JSP_SERVLET_NAME = "jsp";
+	private static final String[] JSP_EXTS         = { ".jsp", ".jspx" };
+	private static final String[] SOURCE_EXTS      = { ".jsp", ".jspx", ".jspf", ".tag", ".tagx", ".tld" };
+
+	private final Path   cacheDir;
+	private final Logger logger;
+	private List<String> jspPaths = new ArrayList<>();
+
+	private JspPrecompiler(Path cacheDir, Logger logger) {
+		this.cacheDir = cacheDir;
+		this.logger   = logger;
+	}
+
+	/**
+	 * Precompile the JSP files of the context on start
+	 *
+	 * @param ctx
+	 * @param cacheDir
+	 * @param logger
+	 */
+	public static void install(Context ctx, Path cacheDir, Logger logger) {
+		ctx.addLifecycleListener(new JspPrecompiler(cacheDir, logger));
+	}
+
+	@Override
+	public void lifecycleEvent(LifecycleEvent event) {
+		Context ctx = (Context) event.getLifecycle();
+		if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType()))
+			configure(ctx);
+		else if (Lifecycle.AFTER_START_EVENT.equals(event.getType()))
+			precompile(ctx);
+	}
+
+	/**
+	 * Point Jasper to the cached scratch directory of the app (the resources
+	 * are started, the "jsp" servlet is not initialized yet)
+	 */
+	private void configure(Context ctx) {
+		Wrapper jsp = (Wrapper) ctx.findChild(JSP_SERVLET_NAME);
+		if (jsp == null)
+			return;
+
+		WebResourceRoot resources = ctx.getResources();
+		List<String>    sources   = new ArrayList<>();
+		listFiles(resources, "/", SOURCE_EXTS, sources);
+		sources.sort(null);
+
+		AppCache.Key key = new AppCache.Key().add(ServerInfo.getServerNumber()).add(Runtime.version().feature());
+		for (String path : sources) {
+			byte[] content = resources.getResource(path).getContent();
+			key.add(path).add(content == null ? null : DigestUtils.sha256(ByteBuffer.wrap(content)));
+		}
+		for (WebResource lib : resources.listResources("/WEB-INF/lib")) // tags and TLDs of the library JARs
+			key.add(lib.getName()).add(lib.getContentLength()).add(lib.getLastModified());
+		addTree(key, resources, "/WEB-INF/classes/"); // beans, tag handlers and constants used by the JSPs
+
+		try {
+			Path scratchDir = Files.createDirectories(cacheDir.resolve(key.toString()));
+			jsp.addInitParameter("scratchdir", scratchDir.toString());
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to create JSP cache directory", e);
+		}
+
+		jspPaths = new ArrayList<>();
+		for (String path : sources)
+			if (endsWith(path, JSP_EXTS))
+				jspPaths.add(path);
+	}
+
+	private void precompile(Context ctx) {
+		Wrapper jsp = (Wrapper) ctx.findChild(JSP_SERVLET_NAME);
+		if (jsp == null || jspPaths.isEmpty())
+			return;
+
+		long    start = System.nanoTime();
+		Servlet servlet;
+		try {
+			servlet = jsp.allocate();
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Unable to precompile JSP files", e);
+			return;
+		}
+
+		List<String>        paths   = jspPaths;
+		ClassLoader         loader  = ctx.getLoader().getClassLoader();
+		HttpServletResponse resp    = (HttpServletResponse) newProxy(HttpServletResponse.class, null);
+		AtomicInteger       next    = new AtomicInteger();
+		int                 threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), paths.size()));
+		ForkJoinPool        pool    = new ForkJoinPool(threads);
+		for (int i = 0; i < threads; i++)
+			pool.execute(() -> {
+				Thread.currentThread().setContextClassLoader(loader);
+				for (int j; (j = next.getAndIncrement()) < paths.size();) {
+					String path = paths.get(j);
+					try {
+						servlet.service((HttpServletRequest) newProxy(HttpServletRequest.class, path), resp);
+					} catch (Throwable e) {
+						logger.log(Level.WARNING, "Unable to precompile JSP file: " + path, e);
+					}
+				}
+			});
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			jsp.deallocate(servlet);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Unable to precompile JSP files", e);
+		}
+		logger.log(Level.INFO, "JSP files precompiled: " + paths.size() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+
+	/**
+	 * Minimal request (or response): "jsp_precompile" request for the JSP path,
+	 * everything else is null (or false, 0)
+	 */
+	private static Object newProxy(Class<?> type, String servletPath) {
+		return Proxy.newProxyInstance(JspPrecompiler.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getServletPath":
+				return servletPath;
+			case "getRequestURI":
+				return servletPath;
+			case "getQueryString":
+				return "jsp_precompile";
+			case "getMethod":
+				return "GET";
+			case "toString":
+				return type.getSimpleName() + '[' + servletPath + ']';
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			}
+			Class<?> returnType = method.getReturnType();
+			if (returnType == boolean.class)
+				return false;
+			if (returnType == int.class)
+				return 0;
+			if (returnType == long.class)
+				return 0L;
+			return null;
+		});
+	}
+
+	private static void addTree(AppCache.Key key, WebResourceRoot resources, String dir) {
+		Set<String> paths = resources.listWebAppPaths(dir);
+		if (paths == null)
+			return;
+		List<String> sorted = new ArrayList<>(paths);
+		sorted.sort(null);
+		for (String path : sorted)
+			if (path.endsWith("/"))
+				addTree(key, resources, path);
+			else {
+				WebResource resource = resources.getResource(path);
+				key.add(path).add(resource.getContentLength()).add(resource.getLastModified());
+			}
+	}
+
+	private static void listFiles(WebResourceRoot resources, String dir, String[] exts, List<String> result) {
+		Set<String> paths = resources.listWebAppPaths(dir);
+		if (paths == null)
+			return;
+		for (String path : paths)
+			if (path.endsWith("/"))
+				listFiles(resources, path, exts, result);
+			else if (endsWith(path, exts))
+				result.add(path);
+	}
+
+	private static boolean endsWith(String path, String[] exts) {
+		for (String ext : exts)
+			if (path.endsWith(ext))
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1 @@
+package org.tommy.common.jsp;
\ No newline at end of file
@@ -0,0 +1,131 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tommy.common.utils.MappedZip;
+
+/**
+ * Relaunches the application in a child JVM that uses class data sharing
+ * (CDS).
+ *
+ * A dynamic CDS archive only holds classes loaded by the built-in class
+ * loaders from plain JAR files, so neither the "rsrc:" URL class loader nor
+ * the {@link IndexedJarClassLoader} can take part in it. In CDS mode the
+ * nested JARs are extracted into the {@link LibCache} and the child JVM runs
+ * the main class with the outer JAR and the cached JARs on its class path:
+ * "-XX:ArchiveClassesAtExit" creates the archive ("dump" mode),
+ * "-XX:SharedArchiveFile" maps it ("run" mode). The class path must be the
+ * same in both modes, so the cache directory is derived from the archive
+ * file name unless it is given explicitly.
+ */
+public class CdsLauncher {
+
+	/**
+	 * System property with the archive file to create
+	 */
+	public static final String CDS_DUMP_PROPERTY = "tommy.cds.dump";
+
+	/**
+	 * System property with the archive file to use
+	 */
+	public static final String CDS_PROPERTY = "tommy.cds";
+
+	private static final String CURRENT_DIR    = "./";
+	private static final String PATH_SEPARATOR = "/";
+	private static final String LIB_CACHE_EXT  = ".lib";
+
+	/**
+	 * Check system properties and run the main class in a CDS-enabled child
+	 * JVM if requested
+	 *
+	 * @param jarPath       outer JAR file
+	 * @param rsrcClassPath "Rsrc-Class-Path" entries ("./", "lib/a.jar")
+	 * @param mainClass     main class name
+	 * @param args          main class arguments
+	 * @return exit code of the child JVM or null if CDS is not requested
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static Integer launchIfRequested(Path jarPath, String[] rsrcClassPath, String mainClass, String[] args) throws IOException, InterruptedException {
+		String dump    = System.getProperty(CDS_DUMP_PROPERTY);
+		String archive = dump != null ? dump : System.getProperty(CDS_PROPERTY);
+		if (archive == null)
+			return null;
+
+		Path   archivePath = Paths.get(archive).toAbsolutePath();
+		String libCache    = System.getProperty(LibCache.LIB_CACHE_PROPERTY);
+		Path   cacheDir    = libCache != null ? Paths.get(libCache) : archivePath.resolveSibling(archivePath.getFileName() + LIB_CACHE_EXT);
+
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-Xlog:cds=error"); // classes that can't be archived are reported as warnings, can be overridden
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+			if (!option.startsWith("-XX:SharedArchiveFile") && !option.startsWith("-XX:ArchiveClassesAtExit") && !option.startsWith("-Xshare"))
+				command.add(option);
+		command.add(dump != null ? "-XX:ArchiveClassesAtExit=" + archivePath : "-XX:SharedArchiveFile=" + archivePath);
+		command.add("-D" + LibCache.LIB_CACHE_PROPERTY + '=' + cacheDir.toAbsolutePath());
+		command.add("-cp");
+		command.add(getClassPath(jarPath, rsrcClassPath, cacheDir));
+		command.add(mainClass);
+		for (String arg : args)
+			command.add(arg);
+
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		Runtime.getRuntime().addShutdownHook(new Thread(process::destroy));
+		return process.waitFor();
+	}
+
+	/**
+	 * Class path of the child JVM: the outer JAR and the cached nested JARs, in
+	 * the "Rsrc-Class-Path" order
+	 */
+	private static String getClassPath(Path jarPath, String[] rsrcClassPath, Path cacheDir) throws IOException {
+		MappedZip    outer     = MappedZip.open(jarPath);
+		List<String> classPath = new ArrayList<>();
+		for (String rsrcPath : rsrcClassPath) {
+			if (CURRENT_DIR.equals(rsrcPath))
+				classPath.add(jarPath.toAbsolutePath().toString());
+			else if (rsrcPath.endsWith(PATH_SEPARATOR))
+				throw new IOException("Class path directory inside of the JAR is not supported in CDS mode: " + rsrcPath);
+			else {
+				MappedZip.Entry entry = outer.getEntry(rsrcPath);
+				if (entry != null) // same as URLClassLoader: missing class path entries are ignored
+					classPath.add(LibCache.getCachedJar(cacheDir, outer, entry).toAbsolutePath().toString());
+			}
+		}
+		return String.join(File.pathSeparator, classPath);
+	}
+}
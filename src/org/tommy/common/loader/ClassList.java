@@ -0,0 +1,142 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.loader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class list of a training run.
+ *
+ * Recording ("tommy.record.classes"): the names of the classes defined by the
+ * {@link IndexedJarClassLoader} are written to the file, in load order, when
+ * the JVM exits.
+ *
+ * Preloading ("tommy.preload.classes"): the classes from the file are loaded
+ * and linked, but not initialized, on a small fork-join pool while the main
+ * thread goes on with the start up. The workers take the classes in the
+ * recorded order, so they stay ahead of the main thread.
+ */
+public class ClassList {
+
+	/**
+	 * System property with the file to record the class list to
+	 */
+	public static final String RECORD_CLASSES_PROPERTY = "tommy.record.classes";
+
+	/**
+	 * System property with the class list file to preload
+	 */
+	public static final String PRELOAD_CLASSES_PROPERTY = "tommy.preload.classes";
+
+	private static final int MAX_PRELOAD_THREADS = 4;
+
+	/**
+	 * Start recording and/or preloading if the system properties are set
+	 *
+	 * @param loader
+	 */
+	public static void startIfRequested(ClassLoader loader) {
+		String record = System.getProperty(RECORD_CLASSES_PROPERTY);
+		if (record != null) {
+			if (loader instanceof IndexedJarClassLoader)
+				record((IndexedJarClassLoader) loader, Paths.get(record));
+			else
+				System.err.println("Class list can't be recorded: indexed class loader is not in use");
+		}
+
+		String preload = System.getProperty(PRELOAD_CLASSES_PROPERTY);
+		if (preload != null)
+			preload(loader, Paths.get(preload));
+	}
+
+	/**
+	 * Record names of the classes defined by the loader, the file is written on
+	 * JVM exit
+	 *
+	 * @param loader
+	 * @param file
+	 */
+	public static void record(IndexedJarClassLoader loader, Path file) {
+		Queue<String> names = new ConcurrentLinkedQueue<>();
+		loader.setClassListener(names::add);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			loader.setClassListener(null);
+			try {
+				Files.write(file, names, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				System.err.println("Unable to write class list: " + file + ": " + e);
+			}
+		}));
+	}
+
+	/**
+	 * Load and link the classes from the file in the background
+	 *
+	 * @param loader
+	 * @param file
+	 */
+	public static void preload(ClassLoader loader, Path file) {
+		List<String> names;
+		try {
+			names = Files.readAllLines(file, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			System.err.println("Unable to read class list: " + file + ": " + e);
+			return;
+		}
+
+		int           threads = Math.max(1, Math.min(MAX_PRELOAD_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+		ForkJoinPool  pool    = new ForkJoinPool(threads);
+		AtomicInteger next    = new AtomicInteger();
+		for (int i = 0; i < threads; i++)
+			pool.execute(() -> {
+				for (int j; (j = next.getAndIncrement()) < names.size();)
+					preload(loader, names.get(j));
+			});
+		pool.shutdown();
+	}
+
+	private static void preload(ClassLoader loader, String name) {
+		if (name.isEmpty())
+			return;
+		try {
+			Class<?> c = Class.forName(name, false, loader);
+			c.getDeclaredConstructors(); // links (verifies) the class, static initializers are not run
+		} catch (ClassNotFoundException | LinkageError e) {
+			// class list is stale or the class is optional, the main thread will report a real problem
+		}
+	}
+}
@@ -0,0 +1,364 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.tommy.common.utils.MappedZip;
+
+/**
+ * Class loader for the "Rsrc-Class-Path" of the outer JAR.
+ *
+ * The outer JAR is memory-mapped and its central directory is read once. The
+ * central directories of all nested JARs are read once as well and merged
+ * into a single name -> (archive, entry) index, in class path order. Class
+ * bytes are defined straight from the mapped view, so nothing is re-streamed
+ * through the "rsrc:" URL protocol.
+ *
+ * Resource URLs keep the "jar:rsrc:path!/name" and "rsrc:name" forms used by
+ * the URLClassLoader-based loader, but are opened from the index. When the
+ * nested JARs come from the {@link LibCache}, they are plain JAR files and
+ * their resources have ordinary "jar:file:" URLs.
+ */
+public class IndexedJarClassLoader extends SecureClassLoader {
+
+	static {
+		registerAsParallelCapable();
+	}
+
+	private static final String JAR_PROTOCOL     = "jar";
+	private static final String RSRC_PROTOCOL    = "rsrc";
+	private static final String JAR_SEPARATOR    = "!/";
+	private static final String CLASS_EXT        = ".class";
+	private static final String CURRENT_DIR      = "./";
+	private static final String PATH_SEPARATOR   = "/";
+
+	/**
+	 * Index record: one archive entry, chained with the entries of the same
+	 * name from the archives that follow on the class path
+	 */
+	private static final class Resource {
+		final int             archive;
+		final MappedZip.Entry entry;
+		Resource              next;
+
+		Resource(int archive, MappedZip.Entry entry) {
+			this.archive = archive;
+			this.entry   = entry;
+		}
+	}
+
+	private final MappedZip[]           archives;
+	private final String[]              urlPrefixes;
+	private final boolean[]             fileBacked;
+	private final CodeSource[]          codeSources;
+	private final Manifest[]            manifests;
+	private final boolean[]             manifestsLoaded;
+	private final Map<String, Resource> index;
+	private final URLStreamHandler      handler = new IndexURLStreamHandler();
+	private volatile Consumer<String>   classListener;
+
+	/**
+	 *
+	 * @param jarPath       outer JAR file
+	 * @param rsrcClassPath "Rsrc-Class-Path" entries ("./", "dir/", "lib/a.jar")
+	 * @param libCache      directory of the nested JAR cache (see {@link LibCache}), or null
+	 * @param parent
+	 * @throws IOException if the outer JAR or a nested JAR can't be indexed
+	 */
+	public IndexedJarClassLoader(Path jarPath, String[] rsrcClassPath, Path libCache, ClassLoader parent) throws IOException {
+		super(parent);
+		MappedZip outer = MappedZip.open(jarPath);
+
+		List<MappedZip> archiveList  = new ArrayList<>();
+		List<String>    prefixList   = new ArrayList<>();
+		List<URL>       locationList = new ArrayList<>();
+		List<String>    dirList      = new ArrayList<>();
+		for (String rsrcPath : rsrcClassPath) {
+			if (rsrcPath.endsWith(PATH_SEPARATOR)) { // directory inside of the outer JAR
+				String dir = CURRENT_DIR.equals(rsrcPath) ? "" : rsrcPath;
+				archiveList.add(outer);
+				prefixList.add(RSRC_PROTOCOL + ':' + dir);
+				locationList.add(null);
+				dirList.add(dir);
+			} else {
+				MappedZip.Entry entry = outer.getEntry(rsrcPath);
+				if (entry == null) // same as URLClassLoader: missing class path entries are ignored
+					continue;
+				if (libCache == null) {
+					archiveList.add(outer.getNested(entry));
+					prefixList.add(JAR_PROTOCOL + ':' + RSRC_PROTOCOL + ':' + rsrcPath + JAR_SEPARATOR);
+					locationList.add(null);
+				} else { // plain JAR file from the cache
+					Path jar = LibCache.getCachedJar(libCache, outer, entry);
+					archiveList.add(MappedZip.open(jar));
+					prefixList.add(JAR_PROTOCOL + ':' + jar.toUri() + JAR_SEPARATOR);
+					locationList.add(jar.toUri().toURL());
+				}
+				dirList.add(null);
+			}
+		}
+
+		int size = archiveList.size();
+		archives        = archiveList.toArray(new MappedZip[size]);
+		urlPrefixes     = prefixList.toArray(new String[size]);
+		fileBacked      = new boolean[size];
+		codeSources     = new CodeSource[size];
+		manifests       = new Manifest[size];
+		manifestsLoaded = new boolean[size];
+
+		int total = 0;
+		for (MappedZip archive : archives)
+			total += archive.size();
+		index = new HashMap<>(total * 4 / 3 + 1);
+
+		for (int i = 0; i < size; i++) {
+			URL location = locationList.get(i);
+			fileBacked[i]  = location != null;
+			codeSources[i] = new CodeSource(fileBacked[i] ? location : new URL(null, urlPrefixes[i], handler), (CodeSigner[]) null);
+			String dir = dirList.get(i);
+			for (MappedZip.Entry entry : archives[i].entries()) {
+				String name = entry.getName();
+				if (dir != null) {
+					if (!name.startsWith(dir) || name.length() == dir.length())
+						continue;
+					name = name.substring(dir.length());
+				}
+				Resource resource = new Resource(i, entry);
+				Resource first    = index.putIfAbsent(name, resource);
+				if (first != null) {
+					Resource last = first;
+					while (last.next != null)
+						last = last.next;
+					last.next = resource;
+				}
+			}
+		}
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		Resource resource = index.get(name.replace('.', '/').concat(CLASS_EXT));
+		if (resource == null)
+			throw new ClassNotFoundException(name);
+		try {
+			ByteBuffer bytes = archives[resource.archive].getData(resource.entry);
+			int        pos   = name.lastIndexOf('.');
+			if (pos != -1)
+				definePackageIfNeeded(name.substring(0, pos), resource.archive);
+			Class<?> c = defineClass(name, bytes, codeSources[resource.archive]);
+			Consumer<String> listener = classListener;
+			if (listener != null)
+				listener.accept(name);
+			return c;
+		} catch (IOException e) {
+			throw new ClassNotFoundException(name, e);
+		}
+	}
+
+	/**
+	 * Set the listener that is notified with the name of every class defined by
+	 * this loader (see {@link ClassList})
+	 *
+	 * @param classListener listener or null
+	 */
+	public void setClassListener(Consumer<String> classListener) {
+		this.classListener = classListener;
+	}
+
+	@Override
+	protected URL findResource(String name) {
+		Resource resource = lookup(name);
+		return resource == null ? null : toURL(name, resource);
+	}
+
+	@Override
+	protected Enumeration<URL> findResources(String name) {
+		List<URL> urls = new ArrayList<>(1);
+		for (Resource resource = lookup(name); resource != null; resource = resource.next) {
+			URL url = toURL(name, resource);
+			if (url != null)
+				urls.add(url);
+		}
+		return Collections.enumeration(urls);
+	}
+
+	@Override
+	public InputStream getResourceAsStream(String name) {
+		ClassLoader parent = getParent();
+		if (parent != null) {
+			InputStream is = parent.getResourceAsStream(name);
+			if (is != null)
+				return is;
+		}
+		Resource resource = lookup(name);
+		if (resource == null)
+			return null;
+		try {
+			return archives[resource.archive].getInputStream(resource.entry);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private Resource lookup(String name) {
+		Resource resource = index.get(name);
+		if (resource == null && !name.isEmpty() && !name.endsWith(PATH_SEPARATOR))
+			resource = index.get(name + PATH_SEPARATOR); // directory entry, as JarFile.getEntry() does
+		return resource;
+	}
+
+	private URL toURL(String name, Resource resource) {
+		try {
+			String spec = urlPrefixes[resource.archive] + name;
+			return fileBacked[resource.archive] ? new URL(spec) : new URL(null, spec, handler);
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	private void definePackageIfNeeded(String packageName, int archive) {
+		if (getDefinedPackage(packageName) != null)
+			return;
+		Manifest manifest = getManifest(archive);
+		try {
+			if (manifest == null)
+				definePackage(packageName, null, null, null, null, null, null, null);
+			else {
+				Attributes attributes = manifest.getMainAttributes();
+				URL        sealBase   = "true".equalsIgnoreCase(attributes.getValue(Attributes.Name.SEALED)) ? codeSources[archive].getLocation() : null;
+				definePackage(packageName, //
+						attributes.getValue(Attributes.Name.SPECIFICATION_TITLE), //
+						attributes.getValue(Attributes.Name.SPECIFICATION_VERSION), //
+						attributes.getValue(Attributes.Name.SPECIFICATION_VENDOR), //
+						attributes.getValue(Attributes.Name.IMPLEMENTATION_TITLE), //
+						attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION), //
+						attributes.getValue(Attributes.Name.IMPLEMENTATION_VENDOR), //
+						sealBase);
+			}
+		} catch (IllegalArgumentException e) {
+			// defined concurrently by another thread
+		}
+	}
+
+	private Manifest getManifest(int archive) {
+		synchronized (manifests) {
+			if (!manifestsLoaded[archive]) {
+				manifestsLoaded[archive] = true;
+				for (Resource resource = index.get(JarFile.MANIFEST_NAME); resource != null; resource = resource.next)
+					if (resource.archive == archive) {
+						try (InputStream is = archives[archive].getInputStream(resource.entry)) {
+							manifests[archive] = new Manifest(is);
+						} catch (IOException e) {
+							// no manifest
+						}
+						break;
+					}
+			}
+			return manifests[archive];
+		}
+	}
+
+	/**
+	 * Resolves "jar:rsrc:path!/name" and "rsrc:name" URLs against the index
+	 */
+	private final class IndexURLStreamHandler extends URLStreamHandler {
+
+		@Override
+		protected void parseURL(URL url, String spec, int start, int limit) {
+			setURL(url, url.getProtocol(), "", -1, null, null, spec.substring(start, limit), null, null);
+		}
+
+		@Override
+		protected URLConnection openConnection(URL url) throws IOException {
+			String file = url.getFile();
+			for (int i = 0; i < urlPrefixes.length; i++) {
+				String prefix = urlPrefixes[i];
+				int    pos    = prefix.indexOf(':') + 1; // skip the URL protocol
+				if (prefix.regionMatches(pos, file, 0, prefix.length() - pos) && prefix.startsWith(url.getProtocol())) {
+					String name = file.substring(prefix.length() - pos);
+					for (Resource resource = lookup(name); resource != null; resource = resource.next)
+						if (resource.archive == i)
+							return new IndexURLConnection(url, resource);
+				}
+			}
+			throw new IOException("Resource is not found: " + url);
+		}
+	}
+
+	private final class IndexURLConnection extends URLConnection {
+
+		private final Resource resource;
+
+		IndexURLConnection(URL url, Resource resource) {
+			super(url);
+			this.resource = resource;
+		}
+
+		@Override
+		public void connect() {
+			connected = true;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			connect();
+			return archives[resource.archive].getInputStream(resource.entry);
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return resource.entry.getSize();
+		}
+
+		@Override
+		public long getLastModified() {
+			return resource.entry.getTime();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.tommy.common.utils.CacheUtils;
+import org.tommy.common.utils.DigestUtils;
+import org.tommy.common.utils.MappedZip;
+
+/**
+ * Persistent on-disk cache of the nested library JARs.
+ *
+ * Every JAR is extracted once into the cache directory as "&lt;sha-256&gt;.jar".
+ * A small pointer file named after the outer JAR entry (name, CRC-32 and size,
+ * all known from the central directory) holds the SHA-256 of its content, so
+ * later launches find the cached JAR without reading the outer one. The
+ * cached JAR is verified against its SHA-256 before it is used and is
+ * extracted again on mismatch.
+ *
+ * Writes are atomic (temp file + rename), so several JVMs may share the
+ * cache directory.
+ */
+public class LibCache {
+
+	/**
+	 * System property (or "META-INF/system.properties" key) with the cache
+	 * directory
+	 */
+	public static final String LIB_CACHE_PROPERTY = "tommy.lib.cache";
+
+	private static final String JAR_EXT     = ".jar";
+	private static final String POINTER_EXT = ".sha256";
+
+	/**
+	 * Get cached copy of the nested JAR, extract it if needed
+	 *
+	 * @param cacheDir
+	 * @param outer    outer JAR
+	 * @param entry    nested JAR entry
+	 * @return path of the cached JAR file
+	 * @throws IOException
+	 */
+	public static Path getCachedJar(Path cacheDir, MappedZip outer, MappedZip.Entry entry) throws IOException {
+		Files.createDirectories(cacheDir);
+		Path pointer = cacheDir.resolve(getPointerName(entry.getName(), entry.getCrc(), entry.getSize()));
+
+		if (Files.isRegularFile(pointer)) {
+			String sha256 = new String(Files.readAllBytes(pointer), StandardCharsets.US_ASCII).trim();
+			Path   jar    = cacheDir.resolve(sha256 + JAR_EXT);
+			if (Files.isRegularFile(jar) && Files.size(jar) == entry.getSize() && sha256.equals(DigestUtils.sha256(jar)))
+				return jar;
+		}
+
+		/* extract */
+		ByteBuffer data   = outer.getData(entry);
+		String     sha256 = DigestUtils.sha256(data.duplicate());
+		Path       jar    = cacheDir.resolve(sha256 + JAR_EXT);
+		Path       tmp    = CacheUtils.createTempFile(cacheDir, JAR_EXT);
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				ByteBuffer src = data.duplicate();
+				while (src.hasRemaining())
+					channel.write(src);
+			}
+			CacheUtils.publish(tmp, jar);
+		} finally {
+			CacheUtils.discard(tmp);
+		}
+
+		writePointer(cacheDir, pointer, sha256);
+		return jar;
+	}
+
+	private static void writePointer(Path cacheDir, Path pointer, String sha256) throws IOException {
+		Path tmpPointer = CacheUtils.createTempFile(cacheDir, POINTER_EXT);
+		try {
+			Files.write(tmpPointer, sha256.getBytes(StandardCharsets.US_ASCII));
+			CacheUtils.publish(tmpPointer, pointer);
+		} finally {
+			CacheUtils.discard(tmpPointer);
+		}
+	}
+
+	private static String getPointerName(String name, long crc, long size) {
+		name = name.substring(name.lastIndexOf('/') + 1);
+		return name + '-' + Long.toHexString(crc) + '-' + size + POINTER_EXT;
+	}
+}
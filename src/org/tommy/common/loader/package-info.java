@@ -0,0 +1 @@
+package org.tommy.common.loader;
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.net;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+import org.apache.tomcat.util.net.NioEndpoint;
+
+/**
+ * NIO endpoint that binds its TCP server socket with SO_REUSEPORT, so several
+ * processes can listen on the same port and the kernel balances the incoming
+ * connections among them (Linux 3.9+)
+ */
+public class ReusePortNioEndpoint extends NioEndpoint {
+
+	private static final Field SERVER_SOCK_FIELD;
+
+	static {
+		try {
+			SERVER_SOCK_FIELD = NioEndpoint.class.getDeclaredField("serverSock");
+			SERVER_SOCK_FIELD.setAccessible(true);
+		} catch (NoSuchFieldException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@Override
+	protected void initServerSocket() throws Exception {
+		if (getUseInheritedChannel() || getUnixDomainSocketPath() != null) {
+			super.initServerSocket();
+			return;
+		}
+
+		/* same as NioEndpoint, plus SO_REUSEPORT before bind */
+		ServerSocketChannel serverSock = ServerSocketChannel.open();
+		try {
+			if (!serverSock.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT))
+				throw new IOException("SO_REUSEPORT is not supported on this platform");
+			serverSock.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+			socketProperties.setProperties(serverSock.socket());
+			serverSock.bind(new InetSocketAddress(getAddress(), getPortWithOffset()), getAcceptCount());
+			serverSock.configureBlocking(true); // mimic APR behavior
+			SERVER_SOCK_FIELD.set(this, serverSock);
+		} catch (Exception e) {
+			serverSock.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.net;
+
+import org.apache.coyote.http11.AbstractHttp11JsseProtocol;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.NioChannel;
+
+/**
+ * HTTP/1.1 NIO protocol ("protocol" attribute of the "Connector" element)
+ * listening with SO_REUSEPORT, see {@link ReusePortNioEndpoint}. Same as
+ * Http11NioProtocol otherwise, including TLS and HTTP/2 upgrade.
+ */
+public class ReusePortNioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
+
+	private static final Log log = LogFactory.getLog(ReusePortNioProtocol.class);
+
+	public ReusePortNioProtocol() {
+		super(new ReusePortNioEndpoint());
+	}
+
+	@Override
+	protected Log getLog() {
+		return log;
+	}
+
+	@Override
+	protected String getNamePrefix() {
+		if (isSSLEnabled())
+			return "https-" + getSslImplementationShortName() + "-nio";
+		return "http-nio";
+	}
+}
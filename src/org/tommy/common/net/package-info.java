@@ -0,0 +1 @@
+package org.tommy.common.net;
\ No newline at end of file
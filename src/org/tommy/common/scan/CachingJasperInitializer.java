@@ -0,0 +1,87 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.scan;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jasper.servlet.JasperInitializer;
+import org.apache.jasper.servlet.TldScanner;
+import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
+import org.xml.sax.SAXException;
+
+import jakarta.servlet.ServletContext;
+
+/**
+ * Jasper initializer with the TLD scan of the "WEB-INF/lib" JARs replayed
+ * from the scan cache: the cached TLDs are parsed, the JARs are not scanned
+ */
+public class CachingJasperInitializer extends JasperInitializer {
+
+	private final ScanCacheContextConfig config;
+
+	/**
+	 *
+	 * @param config
+	 */
+	public CachingJasperInitializer(ScanCacheContextConfig config) {
+		this.config = config;
+	}
+
+	@Override
+	protected TldScanner newTldScanner(ServletContext context, boolean namespaceAware, boolean validate, boolean blockExternal) {
+		return new TldScanner(context, namespaceAware, validate, blockExternal) {
+
+			@Override
+			public void scanJars() {
+				List<String[]> tlds = config.getTlds();
+				if (tlds == null) {
+					super.scanJars();
+					List<String[]> found = new ArrayList<>();
+					for (TldResourcePath path : getTldResourcePathTaglibXmlMap().keySet())
+						if (path.getEntryName() != null && path.getWebappPath() != null) // JARs of the web app
+							found.add(new String[] { path.getWebappPath(), path.getEntryName() });
+					config.recordTlds(found);
+					return;
+				}
+
+				for (String[] tld : tlds)
+					try {
+						URL jarUrl = context.getResource(tld[0]);
+						if (jarUrl != null)
+							parseTld(new TldResourcePath(jarUrl, tld[0], tld[1]));
+					} catch (IOException | SAXException e) {
+						context.log("Unable to parse cached TLD: " + tld[0] + '!' + tld[1], e);
+					}
+			}
+		};
+	}
+}
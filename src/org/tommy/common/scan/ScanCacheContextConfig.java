@@ -0,0 +1,293 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.scan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.startup.ContextConfig;
+import org.apache.catalina.util.ServerInfo;
+import org.apache.jasper.servlet.JasperInitializer;
+import org.apache.tomcat.util.descriptor.web.WebXml;
+import org.tommy.common.utils.AppCache;
+import org.tommy.common.utils.CacheUtils;
+import org.tommy.common.utils.DigestUtils;
+
+import jakarta.servlet.ServletContainerInitializer;
+
+/**
+ * Context configuration that records the results of the start up scans and
+ * replays them on later starts instead of scanning.
+ *
+ * Recorded to "&lt;cache&gt;/&lt;key&gt;/", the key is a digest of the
+ * Tomcat version, "WEB-INF/web.xml" and the names, sizes and last modified
+ * times of the "WEB-INF/lib" JARs and "WEB-INF/classes" files:
+ * <ul>
+ * <li>"web.xml": web.xml of the app (with the servlets, filters and listeners
+ * found by the annotation scan and the merged web fragments), replayed as the
+ * alternate deployment descriptor, it is "metadata-complete" so the
+ * annotation scan is skipped. It is recorded before the global "conf/web.xml"
+ * defaults are merged, those are merged again on every start, so the options
+ * that change them don't need to be part of the key</li>
+ * <li>"types.txt": classes matching the "@HandlesTypes" of the
+ * {@link ServletContainerInitializer}s</li>
+ * <li>"tlds.txt": TLDs found in the "WEB-INF/lib" JARs, parsed without
+ * scanning the JARs (see {@link CachingJasperInitializer})</li>
+ * </ul>
+ */
+public class ScanCacheContextConfig extends ContextConfig {
+
+	/**
+	 * Name of the cache directory in the temp or app cache directory
+	 */
+	public static final String CACHE_DIR = "tommy-scan";
+
+	static final String WEB_XML = "web.xml";
+	static final String TYPES   = "types.txt";
+	static final String TLDS    = "tlds.txt";
+
+	private static final char SEPARATOR = '\t';
+	private static final int  FORMAT    = 2; // recorded web.xml without the defaults
+
+	/* WebXml.toXml() doesn't know the namespace of the Servlet 5.0 web.xml */
+	private static final String NULL_NAMESPACE      = "xmlns=\"null\"\n         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n         xsi:schemaLocation=\"null null\"";
+	private static final String JAKARTAEE_NAMESPACE = "xmlns=\"https://jakarta.ee/xml/ns/jakartaee\"\n         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n         xsi:schemaLocation=\"https://jakarta.ee/xml/ns/jakartaee https://jakarta.ee/xml/ns/jakartaee/web-app_5_0.xsd\"";
+
+	private final Path   cacheDir;
+	private final Logger logger;
+
+	private Path    entryDir;      // cached scan results
+	private Path    recordDir;     // scan results being recorded, null on replay
+	private boolean recordOk;
+	private String  recordedWebXml;
+
+	/**
+	 *
+	 * @param cacheDir
+	 * @param logger
+	 */
+	public ScanCacheContextConfig(Path cacheDir, Logger logger) {
+		this.cacheDir = cacheDir;
+		this.logger   = logger;
+	}
+
+	@Override
+	protected void webConfig() {
+		recordedWebXml = null;
+		recordDir      = null;
+		recordOk       = true;
+		try {
+			entryDir = cacheDir.resolve(getKey());
+			if (Files.isDirectory(entryDir)) {
+				Path webXml = entryDir.resolve(WEB_XML);
+				context.setAltDDName(Files.isRegularFile(webXml) ? webXml.toString() : null);
+			} else {
+				context.setAltDDName(null);
+				recordDir = CacheUtils.createTempDirectory(cacheDir);
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to use scan cache", e);
+			entryDir = null;
+		}
+
+		super.webConfig();
+
+		if (ok && recordDir != null && recordedWebXml != null)
+			write(recordDir.resolve(WEB_XML), List.of(recordedWebXml.replace(NULL_NAMESPACE, JAKARTAEE_NAMESPACE)));
+	}
+
+	@Override
+	protected WebXml createWebXml() {
+		return new WebXml() {
+
+			@Override
+			public boolean merge(Set<WebXml> fragments) {
+				/* the global defaults and "tomcat-web.xml" are overridable, the web fragments are merged before them */
+				if (recordDir != null && recordedWebXml == null && fragments.stream().anyMatch(WebXml::isOverridable))
+					recordedWebXml = toXml();
+				return super.merge(fragments);
+			}
+		};
+	}
+
+	@Override
+	protected void processServletContainerInitializers() {
+		super.processServletContainerInitializers();
+		if (entryDir == null)
+			return;
+
+		/* JSP TLD scan is cached too, the map is ordered */
+		Map<ServletContainerInitializer, Set<Class<?>>> initializers = new LinkedHashMap<>(initializerClassMap);
+		initializerClassMap.clear();
+		for (Map.Entry<ServletContainerInitializer, Set<Class<?>>> entry : initializers.entrySet()) {
+			ServletContainerInitializer sci = entry.getKey();
+			if (sci.getClass() == JasperInitializer.class)
+				sci = new CachingJasperInitializer(this);
+			initializerClassMap.put(sci, entry.getValue());
+		}
+	}
+
+	@Override
+	protected void processClasses(WebXml webXml, Set<WebXml> orderedFragments) {
+		if (entryDir == null) {
+			super.processClasses(webXml, orderedFragments);
+			return;
+		}
+
+		if (recordDir == null) { // replay "@HandlesTypes" matches
+			ClassLoader loader = context.getLoader().getClassLoader();
+			for (String[] line : read(entryDir.resolve(TYPES)))
+				for (Map.Entry<ServletContainerInitializer, Set<Class<?>>> entry : initializerClassMap.entrySet())
+					if (entry.getKey().getClass().getName().equals(line[0]))
+						try {
+							entry.getValue().add(Class.forName(line[1], false, loader));
+						} catch (ClassNotFoundException | LinkageError e) {
+							logger.log(Level.FINE, "Unable to load class: " + line[1], e);
+						}
+			return;
+		}
+
+		super.processClasses(webXml, orderedFragments);
+		List<String> types = new ArrayList<>();
+		for (Map.Entry<ServletContainerInitializer, Set<Class<?>>> entry : initializerClassMap.entrySet())
+			for (Class<?> type : entry.getValue())
+				types.add(entry.getKey().getClass().getName() + SEPARATOR + type.getName());
+		write(recordDir.resolve(TYPES), types);
+	}
+
+	@Override
+	public void lifecycleEvent(LifecycleEvent event) {
+		super.lifecycleEvent(event);
+		if (Lifecycle.AFTER_START_EVENT.equals(event.getType()) && recordDir != null) {
+			if (recordOk)
+				commit();
+			else
+				CacheUtils.discard(recordDir);
+			recordDir = null;
+		}
+	}
+
+	/**
+	 * @return cached TLDs of the "WEB-INF/lib" JARs: web app path of the JAR
+	 *         and the TLD entry name; null if not cached
+	 */
+	List<String[]> getTlds() {
+		return entryDir == null || recordDir != null ? null : read(entryDir.resolve(TLDS));
+	}
+
+	/**
+	 * Record the TLDs of the "WEB-INF/lib" JARs
+	 *
+	 * @param tlds web app path of the JAR and the TLD entry name
+	 */
+	void recordTlds(List<String[]> tlds) {
+		if (recordDir == null)
+			return;
+		List<String> lines = new ArrayList<>();
+		for (String[] tld : tlds)
+			lines.add(tld[0] + SEPARATOR + tld[1]);
+		write(recordDir.resolve(TLDS), lines);
+	}
+
+	private String getKey() throws IOException {
+		WebResourceRoot resources = context.getResources();
+		AppCache.Key    key       = new AppCache.Key().add(ServerInfo.getServerNumber()).add(FORMAT);
+		WebResource     webXml    = resources.getResource("/WEB-INF/web.xml");
+		byte[]          content   = webXml.isFile() ? webXml.getContent() : null;
+		key.add(content == null ? null : DigestUtils.sha256(ByteBuffer.wrap(content)));
+		addTree(key, resources, "/WEB-INF/lib/");
+		addTree(key, resources, "/WEB-INF/classes/");
+		return key.toString();
+	}
+
+	private static void addTree(AppCache.Key key, WebResourceRoot resources, String dir) {
+		Set<String> paths = resources.listWebAppPaths(dir);
+		if (paths == null)
+			return;
+		List<String> sorted = new ArrayList<>(paths);
+		sorted.sort(null);
+		for (String path : sorted)
+			if (path.endsWith("/"))
+				addTree(key, resources, path);
+			else {
+				WebResource resource = resources.getResource(path);
+				key.add(path).add(resource.getContentLength()).add(resource.getLastModified());
+			}
+	}
+
+	private void commit() {
+		try {
+			for (String name : new String[] { TYPES, TLDS })
+				if (!Files.exists(recordDir.resolve(name)))
+					write(recordDir.resolve(name), List.of());
+			CacheUtils.publish(recordDir, entryDir);
+			logger.log(Level.INFO, "Scan results recorded: " + entryDir);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to record scan results", e);
+			CacheUtils.discard(recordDir);
+		}
+	}
+
+	private void write(Path path, List<String> lines) {
+		try {
+			Files.write(path, lines, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to record scan results", e);
+			recordOk = false;
+		}
+	}
+
+	private List<String[]> read(Path path) {
+		List<String[]> result = new ArrayList<>();
+		try {
+			for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+				int pos = line.indexOf(SEPARATOR);
+				if (pos != -1)
+					result.add(new String[] { line.substring(0, pos), line.substring(pos + 1) });
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to read scan results: " + path, e);
+		}
+		return result;
+	}
+}
@@ -0,0 +1 @@
+package org.tommy.common.scan;
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.threads;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Counts the virtual threads that pin their carrier thread (JFR
+ * "jdk.VirtualThreadPinned" events: blocking inside "synchronized" or
+ * native code) and logs a summary of the places they block at, at most
+ * once per {@link #REPORT_INTERVAL}.
+ */
+class PinnedThreadMonitor implements AutoCloseable {
+
+	private static final Log log = LogFactory.getLog(PinnedThreadMonitor.class);
+
+	private static final String   EVENT_NAME      = "jdk.VirtualThreadPinned";
+	private static final Duration THRESHOLD       = Duration.ofMillis(20);    // the JDK default
+	private static final Duration REPORT_INTERVAL = Duration.ofMinutes(1);
+	private static final int      REPORT_SITES    = 5;
+
+	private final RecordingStream stream;
+
+	/* guarded by this */
+	private long                 count;
+	private long                 totalNanos;
+	private long                 lastReportNanos = System.nanoTime();
+	private long                 reportCount;
+	private Map<String, Integer> reportSites     = new HashMap<>();
+
+	private PinnedThreadMonitor(RecordingStream stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * @return running monitor or null if JFR is not available
+	 */
+	static PinnedThreadMonitor start() {
+		try {
+			RecordingStream     stream  = new RecordingStream();
+			PinnedThreadMonitor monitor = new PinnedThreadMonitor(stream);
+			stream.enable(EVENT_NAME).withThreshold(THRESHOLD).withStackTrace();
+			stream.onEvent(EVENT_NAME, monitor::onPinned);
+			stream.onFlush(monitor::report);
+			stream.startAsync();
+			return monitor;
+		} catch (RuntimeException | Error e) { // JFR disabled or not included in the runtime
+			log.debug("Unable to start JFR recording stream", e);
+			return null;
+		}
+	}
+
+	synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return total pinned time (ms)
+	 */
+	synchronized long getTotalTime() {
+		return totalNanos / 1_000_000;
+	}
+
+	private synchronized void onPinned(RecordedEvent event) {
+		count++;
+		totalNanos += event.getDuration().toNanos();
+		reportCount++;
+		reportSites.merge(getSite(event.getStackTrace()), 1, Integer::sum);
+	}
+
+	private synchronized void report() {
+		long now = System.nanoTime();
+		if (reportCount == 0 || now - lastReportNanos < REPORT_INTERVAL.toNanos())
+			return;
+		String sites = reportSites.entrySet().stream() //
+				.sorted(Map.Entry.<String, Integer>comparingByValue().reversed()) //
+				.limit(REPORT_SITES) //
+				.map(e -> e.getKey() + " (" + e.getValue() + ')') //
+				.collect(Collectors.joining(", "));
+		log.warn("Virtual threads pinned their carrier thread " + reportCount + " times (" + count + " total, " + getTotalTime() + " ms), at: " + sites);
+		lastReportNanos = now;
+		reportCount     = 0;
+		reportSites     = new HashMap<>();
+	}
+
+	/**
+	 * @return first frame outside of the JDK, the code that blocks while pinned
+	 */
+	private static String getSite(RecordedStackTrace stackTrace) {
+		if (stackTrace == null)
+			return "unknown";
+		List<RecordedFrame> frames = stackTrace.getFrames();
+		for (RecordedFrame frame : frames) {
+			String type = frame.getMethod().getType().getName();
+			if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun."))
+				return type + '.' + frame.getMethod().getName() + ':' + frame.getLineNumber();
+		}
+		return frames.isEmpty() ? "unknown" : frames.get(0).getMethod().getType().getName() + '.' + frames.get(0).getMethod().getName();
+	}
+
+	@Override
+	public void close() {
+		stream.close();
+	}
+}
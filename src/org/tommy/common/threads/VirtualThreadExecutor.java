@@ -0,0 +1,196 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.threads;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.Executor;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.util.LifecycleMBeanBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Connector executor ("Executor" element of "server.xml") that runs every
+ * request on a new virtual thread, so requests blocked on I/O don't hold a
+ * platform thread. Virtual threads need Java 21 or later: the API is used
+ * reflectively, see {@link #isSupported()}.
+ *
+ * The virtual threads that pin their carrier thread (blocking inside
+ * "synchronized" or native code) are reported by {@link PinnedThreadMonitor},
+ * the counters are available as attributes of the executor MBean.
+ */
+public class VirtualThreadExecutor extends LifecycleMBeanBase implements Executor {
+
+	private static final Log log = LogFactory.getLog(VirtualThreadExecutor.class);
+
+	private final AtomicInteger activeCount        = new AtomicInteger();
+	private final AtomicLong    completedTaskCount = new AtomicLong();
+
+	private String              name;
+	private String              namePrefix = "catalina-vexec-";
+	private ExecutorService     executor;
+	private PinnedThreadMonitor pinnedThreadMonitor;
+
+	/**
+	 * @return true if the JVM supports virtual threads (Java 21+)
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual").invoke(null);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) { // older JVM or preview feature not enabled
+			return false;
+		}
+	}
+
+	@Override
+	protected void startInternal() throws LifecycleException {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object   builder      = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			executor = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+		} catch (InvocationTargetException e) {
+			throw new LifecycleException("Virtual threads are not supported", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new LifecycleException("Virtual threads are not supported", e);
+		}
+
+		pinnedThreadMonitor = PinnedThreadMonitor.start();
+		if (pinnedThreadMonitor == null)
+			log.warn("Pinned virtual thread events are not available (JFR)");
+
+		setState(LifecycleState.STARTING);
+	}
+
+	@Override
+	protected void stopInternal() throws LifecycleException {
+		setState(LifecycleState.STOPPING);
+		if (executor != null)
+			executor.shutdownNow();
+		executor = null;
+		if (pinnedThreadMonitor != null)
+			pinnedThreadMonitor.close();
+		pinnedThreadMonitor = null;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		ExecutorService executor = this.executor;
+		if (executor == null)
+			throw new RejectedExecutionException("Executor not running, can't force a command into the queue");
+		activeCount.incrementAndGet();
+		try {
+			executor.execute(() -> {
+				try {
+					command.run();
+				} finally {
+					activeCount.decrementAndGet();
+					completedTaskCount.incrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			activeCount.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * No queue, the command starts at once: the timeout doesn't apply
+	 */
+	@Override
+	@Deprecated
+	public void execute(Runnable command, long timeout, TimeUnit unit) {
+		execute(command);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getNamePrefix() {
+		return namePrefix;
+	}
+
+	public void setNamePrefix(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	/**
+	 * @return number of the requests being processed
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	public long getCompletedTaskCount() {
+		return completedTaskCount.get();
+	}
+
+	/**
+	 * @return number of the pinned virtual thread events (JFR
+	 *         "jdk.VirtualThreadPinned")
+	 */
+	public long getPinnedCount() {
+		PinnedThreadMonitor monitor = pinnedThreadMonitor;
+		return monitor == null ? 0 : monitor.getCount();
+	}
+
+	/**
+	 * @return total time the virtual threads pinned their carriers (ms)
+	 */
+	public long getPinnedTime() {
+		PinnedThreadMonitor monitor = pinnedThreadMonitor;
+		return monitor == null ? 0 : monitor.getTotalTime();
+	}
+
+	@Override
+	protected String getDomainInternal() {
+		return null;
+	}
+
+	@Override
+	protected String getObjectNameKeyProperties() {
+		return "type=Executor,name=" + getName();
+	}
+}
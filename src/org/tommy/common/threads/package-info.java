@@ -0,0 +1 @@
+package org.tommy.common.threads;
\ No newline at end of file
@@ -0,0 +1,157 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of the prepared web apps (downloaded, copied, decrypted
+ * WAR files and directory snapshots).
+ *
+ * Every app is prepared once into "&lt;key&gt;/" of the cache directory, the
+ * key is a digest of the app source (see {@link Key}), so a warm start
+ * reuses the prepared app without any copying. Entries are prepared in a
+ * temp directory and renamed, so several JVMs may share the cache
+ * directory.
+ */
+public class AppCache {
+
+	/**
+	 * Prepares the app in the given (empty) directory
+	 */
+	public interface Preparer {
+
+		/**
+		 * @param targetDir
+		 * @return path of the prepared WAR file or directory inside of the target directory, null if not found
+		 * @throws Exception
+		 */
+		Path prepare(Path targetDir) throws Exception;
+	}
+
+	/**
+	 * Digest of the app source
+	 */
+	public static class Key {
+
+		private final MessageDigest md = DigestUtils.newSha256();
+
+		/**
+		 * Add a part of the source description
+		 *
+		 * @param part
+		 * @return this
+		 */
+		public Key add(Object part) {
+			md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			return this;
+		}
+
+		/**
+		 * Add the password fingerprint (the password itself can't be recovered
+		 * from the key)
+		 *
+		 * @param password
+		 * @return this
+		 */
+		public Key addPassword(char[] password) {
+			if (password == null)
+				return add(null);
+			MessageDigest passwordMd = DigestUtils.newSha256();
+			passwordMd.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(password)));
+			return add(DigestUtils.toHex(passwordMd.digest()));
+		}
+
+		/**
+		 * Add the paths, sizes and last modified times of the files of the
+		 * directory
+		 *
+		 * @param dir
+		 * @return this
+		 * @throws IOException
+		 */
+		public Key addTree(Path dir) throws IOException {
+			try (Stream<Path> stream = Files.walk(dir)) {
+				for (Path path : (Iterable<Path>) stream.sorted()::iterator)
+					if (Files.isRegularFile(path))
+						add(dir.relativize(path)).add(Files.size(path)).add(Files.getLastModifiedTime(path).toMillis());
+			}
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return DigestUtils.toHex(md.digest());
+		}
+	}
+
+	/**
+	 * Get the prepared app from the cache, prepare it on miss
+	 *
+	 * @param cacheDir
+	 * @param key
+	 * @param preparer
+	 * @return path of the prepared WAR file or directory, null if not found
+	 * @throws Exception
+	 */
+	public static Path get(Path cacheDir, String key, Preparer preparer) throws Exception {
+		Path entryDir = cacheDir.resolve(key);
+		Path cached   = getContent(entryDir);
+		if (cached != null)
+			return cached;
+
+		Path tmpDir = CacheUtils.createTempDirectory(cacheDir);
+		try {
+			if (preparer.prepare(tmpDir) == null)
+				return null;
+			CacheUtils.publish(tmpDir, entryDir);
+			return getContent(entryDir);
+		} finally {
+			CacheUtils.discard(tmpDir);
+		}
+	}
+
+	private static Path getContent(Path entryDir) throws IOException {
+		if (!Files.isDirectory(entryDir))
+			return null;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(entryDir)) {
+			for (Path path : stream)
+				return path;
+		}
+		return null;
+	}
+}
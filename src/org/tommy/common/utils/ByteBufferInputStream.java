@@ -0,0 +1,93 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over a (possibly memory-mapped) byte buffer
+ *
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	/**
+	 *
+	 * @param buffer
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		int remaining = buffer.remaining();
+		if (remaining == 0)
+			return -1;
+		int n = Math.min(len, remaining);
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + k);
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public long transferTo(OutputStream out) throws IOException {
+		long   count = buffer.remaining();
+		byte[] chunk = new byte[(int) Math.min(count, 64 * 1024)];
+		while (buffer.hasRemaining()) {
+			int n = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, n);
+			out.write(chunk, 0, n);
+		}
+		return count;
+	}
+}
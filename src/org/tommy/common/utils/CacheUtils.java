@@ -0,0 +1,129 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Helpers of the persistent caches shared by several JVMs (app, library,
+ * scan, TLS, precompressed and preloaded caches): an entry is built under a
+ * temp name in the cache directory and published by renaming it, so a
+ * reader never sees a half-built entry.
+ */
+public class CacheUtils {
+
+	/**
+	 * Name prefix of the temp files and directories in the cache directories
+	 */
+	public static final String TMP_PREFIX = ".tmp-";
+
+	/**
+	 * Create temp directory in the cache directory (created if needed)
+	 *
+	 * @param cacheDir
+	 * @return
+	 * @throws IOException
+	 */
+	public static Path createTempDirectory(Path cacheDir) throws IOException {
+		return Files.createTempDirectory(Files.createDirectories(cacheDir), TMP_PREFIX);
+	}
+
+	/**
+	 * Create temp file in the cache directory (created if needed)
+	 *
+	 * @param cacheDir
+	 * @param suffix
+	 * @return
+	 * @throws IOException
+	 */
+	public static Path createTempFile(Path cacheDir, String suffix) throws IOException {
+		return Files.createTempFile(Files.createDirectories(cacheDir), TMP_PREFIX, suffix);
+	}
+
+	/**
+	 * Publish the temp file or directory under its final name (atomic rename
+	 * where supported). Another JVM may publish the same entry: a file
+	 * replaces the existing one, a directory published first is kept and the
+	 * temp one is deleted.
+	 *
+	 * @param tmp    temp file or directory in the same cache directory
+	 * @param target
+	 * @throws IOException
+	 */
+	public static void publish(Path tmp, Path target) throws IOException {
+		try {
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			if (!Files.isDirectory(tmp) || !Files.isDirectory(target)) // otherwise published concurrently by another JVM
+				throw e;
+		} finally {
+			discard(tmp);
+		}
+	}
+
+	/**
+	 * Delete the temp file or directory if it exists (not published), errors
+	 * are ignored: a leftover only takes space, its name starts with
+	 * {@link #TMP_PREFIX}
+	 *
+	 * @param tmp
+	 */
+	public static void discard(Path tmp) {
+		try {
+			deleteTree(tmp);
+		} catch (IOException e) {
+			// leftover temp file or directory
+		}
+	}
+
+	/**
+	 * Delete the file or the directory with its content, if it exists
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void deleteTree(Path path) throws IOException {
+		if (!Files.exists(path))
+			return;
+		try (Stream<Path> stream = Files.walk(path)) {
+			for (Path p : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator)
+				Files.deleteIfExists(p);
+		}
+	}
+}
@@ -27,10 +27,12 @@ E-Mail: xnbox.team@outlook.com
 
 package org.tommy.common.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -39,11 +41,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.spi.NamingManager;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
@@ -53,14 +67,19 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.catalina.startup.Catalina;
-import org.apache.catalina.startup.CatalinaBaseConfigurationSource;
 import org.apache.catalina.startup.Constants;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.webresources.TomcatURLStreamHandlerFactory;
+import org.apache.tomcat.util.file.ConfigurationSource;
+import org.tommy.common.conf.ConnectorTuning;
+import org.tommy.common.conf.MemoryConfigurationSource;
+import org.tommy.common.conf.TlsSettings;
+import org.tommy.common.loader.LibCache;
+import org.tommy.common.webresources.WebApp;
+import org.tommy.common.webresources.Zip4jResourceSet;
+import org.tommy.common.webresources.ZipResourceSet;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentType;
 import org.w3c.dom.Element;
@@ -81,57 +100,14 @@ public class CommonUtils {
 	public static final String APP_ZIP = "app.zip";
 	public static final String APP_DIR = "app";
 
-	private static final String WAR_EXT = ".war";
+	private static final String WAR_EXT       = ".war";
+	private static final String LIB_DIR       = "lib";
+	private static final String DOWNLOADS_DIR = "tommy-downloads";
+	private static final String APP_URL       = "app:/";
 
 	private static Class       clazz = CommonUtils.class;
 	private static ClassLoader cl    = clazz.getClassLoader();
 
-	/**
-	 * Copy the Apache Tomcat configuration files
-	 *
-	 * @param targetPath
-	 * @param fileName
-	 * @throws IOException
-	 */
-	public static void copyConfResource(Path targetPath, String fileName) throws IOException {
-		try (InputStream is = cl.getResourceAsStream("META-INF/tomcat/conf/" + fileName)) {
-			if (is == null)
-				return;
-			Path path = targetPath.resolve(fileName);
-			Files.copy(is, path);
-		}
-	}
-
-	/**
-	 * Copy the keystore file
-	 *
-	 * @param targetPath
-	 * @throws IOException
-	 */
-	public static void copyKeystoreResource(Path targetPath) throws IOException {
-		String fileName = "localhost-rsa.jks";
-		try (InputStream is = cl.getResourceAsStream("META-INF/tomcat/conf/keystore/" + fileName)) {
-			if (is == null)
-				return;
-			Path path = targetPath.resolve(fileName);
-			Files.copy(is, path);
-		}
-	}
-
-	/**
-	 * Copy the Apache Tomcat "server.xml" file
-	 *
-	 * @param targetPath
-	 * @param fileName
-	 * @param xmlDocument
-	 * @throws Throwable
-	 */
-	public static void copyConfDocumentXml(Path targetPath, String fileName, Document xmlDocument) throws Throwable {
-		Path         path = targetPath.resolve(fileName);
-		OutputStream os   = Files.newOutputStream(path);
-		storeXmlDocument(xmlDocument, os);
-	}
-
 	public static Path copyWarResource(Path targetPath, String warResource) throws IOException, URISyntaxException {
 		int    pos         = warResource.lastIndexOf('/');
 		String warFileName = warResource.substring(pos + 1);
@@ -167,6 +143,26 @@ public class CommonUtils {
 		transformer.transform(source, result);
 	}
 
+	/**
+	 * Copy directory tree
+	 *
+	 * @param sourceDir
+	 * @param targetDir
+	 * @throws IOException
+	 */
+	public static void copyDir(Path sourceDir, Path targetDir) throws IOException {
+		try (Stream<Path> stream = Files.walk(sourceDir)) {
+			for (Iterator<Path> it = stream.iterator(); it.hasNext();) {
+				Path source = it.next();
+				Path target = targetDir.resolve(sourceDir.relativize(source).toString());
+				if (Files.isDirectory(source))
+					Files.createDirectories(target);
+				else
+					Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+			}
+		}
+	}
+
 	/**
 	 * Extract resource from war file
 	 *
@@ -238,16 +234,242 @@ public class CommonUtils {
 	}
 
 	/**
-	 * Get WAR path
+	 * Get web app. The embedded WAR (or ZIP) file is served in place from the
+	 * JAR when it is stored uncompressed and is not encrypted, other apps are
+	 * copied to the "webapps" directory (see {@link #getWarPath}). Encrypted
+	 * archives are decrypted on demand, entry by entry, or up front with
+	 * decryptEager. With the app cache a prepared app is reused across
+	 * restarts.
+	 *
+	 * @param jarFileName
+	 * @param webappsPath
+	 * @param app
+	 * @param password
+	 * @param snapshot         serve a copy of the app directory
+	 * @param decryptCacheSize size of the decrypted entry cache in bytes
+	 * @param decryptEager     decrypt the whole archive before start
+	 * @param appCacheDir      persistent cache of the prepared apps (see {@link AppCache}), null to prepare the app on every start
+	 * @param appSha256        expected SHA-256 of the app URL content, null to skip the check
+	 * @return web app or null if not found
+	 * @throws Exception
+	 */
+	public static WebApp getWebApp(String jarFileName, Path webappsPath, String app, char[] password, boolean snapshot, long decryptCacheSize, boolean decryptEager, Path appCacheDir, String appSha256) throws Exception {
+		String warResource = getWarResource();
+		if ((APP_WAR.equals(warResource) || APP_ZIP.equals(warResource)) && Files.isRegularFile(Paths.get(jarFileName))) {
+			MappedZip       outer = MappedZip.open(Paths.get(jarFileName));
+			MappedZip.Entry entry = outer.getEntry(warResource);
+			if (entry != null && entry.isStored() && !entry.isEncrypted()) {
+				MappedZip zip = outer.getNested(entry);
+				if (!isEncrypted(zip)) {
+					Path docBase  = Files.createDirectories(webappsPath.resolve(APP_DIR)); // empty, resources come from the archive
+					Path libCache = getLibCache(webappsPath);
+					return new WebApp(docBase, root -> new ZipResourceSet(root, "/", jarFileName, zip, APP_URL, libCache));
+				}
+			}
+		}
+
+		Path           warPath;
+		String         key        = appCacheDir == null ? null : getAppCacheKey(jarFileName, warResource, app, password, snapshot, decryptEager, appSha256);
+		HttpDownloader downloader = new HttpDownloader(appCacheDir == null ? Paths.get(System.getProperty("java.io.tmpdir"), DOWNLOADS_DIR) : appCacheDir.resolve(DOWNLOADS_DIR));
+		if (key == null)
+			warPath = prepareWar(jarFileName, webappsPath, app, password, snapshot, decryptEager, downloader, appSha256);
+		else
+			warPath = AppCache.get(appCacheDir, key, dir -> prepareWar(jarFileName, dir, app, password, snapshot, decryptEager, downloader, appSha256));
+		if (warPath == null)
+			return null;
+		if (Files.isRegularFile(warPath)) {
+			Path docBase  = webappsPath.resolve(APP_DIR); // empty, resources come from the archive
+			Path libCache = getLibCache(key == null ? webappsPath : appCacheDir);
+			if (Zip4jUtils.isEncrypted(warPath)) {
+				Files.createDirectories(docBase);
+				return new WebApp(docBase, root -> new Zip4jResourceSet(root, "/", warPath, password, APP_URL, decryptCacheSize), true);
+			}
+			if (key != null) { // cached WAR is served in place, Tomcat would unpack it on every start
+				MappedZip zip = MappedZip.open(warPath);
+				Files.createDirectories(docBase);
+				return new WebApp(docBase, root -> new ZipResourceSet(root, "/", warPath.toString(), zip, APP_URL, libCache));
+			}
+		}
+		return new WebApp(warPath);
+	}
+
+	/**
+	 * Get web apps, prepared in parallel (downloads, copies and decryption
+	 * overlap), see {@link #getWebApp}. With several apps each app is prepared
+	 * in its own numbered subdirectory of the "webapps" directory.
+	 *
+	 * @param jarFileName
+	 * @param webappsPath
+	 * @param apps             app sources ("--app" values)
+	 * @param password
+	 * @param snapshot
+	 * @param decryptCacheSize
+	 * @param decryptEager
+	 * @param appCacheDir
+	 * @param appSha256s       expected SHA-256 of the apps downloaded from URL, null elements for the unchecked ones
+	 * @return web apps in the order of the sources, null elements for the apps not found
+	 * @throws Exception
+	 */
+	public static WebApp[] getWebApps(String jarFileName, Path webappsPath, String[] apps, char[] password, boolean snapshot, long decryptCacheSize, boolean decryptEager, Path appCacheDir, String[] appSha256s) throws Exception {
+		WebApp[] webApps = new WebApp[apps.length];
+		if (apps.length == 1) {
+			webApps[0] = getWebApp(jarFileName, webappsPath, apps[0], password, snapshot, decryptCacheSize, decryptEager, appCacheDir, appSha256s[0]);
+			return webApps;
+		}
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		ForkJoinPool               pool    = new ForkJoinPool(apps.length);
+		for (int i = 0; i < apps.length; i++) {
+			int index = i;
+			pool.execute(() -> {
+				try {
+					Path appWebappsPath = Files.createDirectories(webappsPath.resolve(Integer.toString(index)));
+					webApps[index] = getWebApp(jarFileName, appWebappsPath, apps[index], password, snapshot, decryptCacheSize, decryptEager, appCacheDir, appSha256s[index]);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			throw e;
+		}
+		Throwable e = failure.get();
+		if (e instanceof Exception)
+			throw (Exception) e;
+		if (e != null)
+			throw (Error) e;
+		return webApps;
+	}
+
+	/**
+	 * Prepare the app once for several server processes (see "--workers"): the
+	 * URL is downloaded, the file or the directory snapshot is copied, the
+	 * archive is decrypted if decryptEager (see {@link #getWarPath})
+	 *
+	 * @param jarFileName
+	 * @param targetPath
+	 * @param app
+	 * @param password
+	 * @param snapshot
+	 * @param decryptEager
+	 * @param appCacheDir  directory of the download cache, null for the temp directory
+	 * @param appSha256
+	 * @return path of the WAR file or directory, null if not found
+	 * @throws Exception
+	 */
+	public static Path prepareApp(String jarFileName, Path targetPath, String app, char[] password, boolean snapshot, boolean decryptEager, Path appCacheDir, String appSha256) throws Exception {
+		HttpDownloader downloader = new HttpDownloader(appCacheDir == null ? Paths.get(System.getProperty("java.io.tmpdir"), DOWNLOADS_DIR) : appCacheDir.resolve(DOWNLOADS_DIR));
+		return prepareWar(jarFileName, targetPath, app, password, snapshot, decryptEager, downloader, appSha256);
+	}
+
+	private static Path prepareWar(String jarFileName, Path targetPath, String app, char[] password, boolean snapshot, boolean decryptEager, HttpDownloader downloader, String appSha256) throws Exception {
+		Path warPath = getWarPath(jarFileName, targetPath, app, password, snapshot, downloader, appSha256);
+		if (decryptEager && warPath != null && Files.isRegularFile(warPath) && Zip4jUtils.isEncrypted(warPath))
+			Zip4jUtils.decryptZip(warPath, password);
+		return warPath;
+	}
+
+	/**
+	 * Key of the app in the app cache: digest of the embedded app entries
+	 * (names, CRCs and sizes), of the external file or directory (paths, sizes
+	 * and last modified times) or of the URL and its validator (ETag or
+	 * Last-Modified and Content-Length, or the expected SHA-256 of the content),
+	 * plus the password fingerprint
+	 *
+	 * @return key or null if the app is not cacheable
+	 */
+	private static String getAppCacheKey(String jarFileName, String warResource, String app, char[] password, boolean snapshot, boolean decryptEager, String appSha256) throws Exception {
+		AppCache.Key key = new AppCache.Key().addPassword(password).add(decryptEager);
+		if (warResource != null) { // Embedded app
+			Path jarPath = Paths.get(jarFileName);
+			if (!Files.isRegularFile(jarPath))
+				return null;
+			String dirPrefix = APP_DIR + '/';
+			for (MappedZip.Entry entry : MappedZip.open(jarPath).entries())
+				if (warResource.equals(APP_DIR) ? entry.getName().startsWith(dirPrefix) : entry.getName().equals(warResource))
+					key.add(entry.getName()).add(entry.getCrc()).add(entry.getSize());
+			return key.toString();
+		}
+		if (app == null)
+			return null;
+		if (app.startsWith("http://") || app.startsWith("https://")) {
+			if (appSha256 != null)
+				return key.add(appSha256.toLowerCase()).toString();
+			String validator = getUrlValidator(app);
+			return validator == null ? null : key.add(app).add(validator).toString();
+		}
+		Path abs = app.startsWith("file://") ? Paths.get(new URL(app).toURI()) : Paths.get(app).toAbsolutePath();
+		if (Files.isDirectory(abs))
+			return snapshot ? key.add(abs).addTree(abs).toString() : null; // otherwise served in place
+		if (!Files.isRegularFile(abs))
+			return null;
+		return key.add(abs).add(Files.size(abs)).add(Files.getLastModifiedTime(abs).toMillis()).toString();
+	}
+
+	/**
+	 * Strong ETag, or Last-Modified and Content-Length of the URL (HEAD
+	 * request)
+	 *
+	 * @return validator or null if not available
+	 */
+	private static String getUrlValidator(String url) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestMethod("HEAD");
+			try {
+				if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+					return null;
+				String etag = connection.getHeaderField("ETag");
+				if (etag != null && !etag.startsWith("W/"))
+					return etag;
+				String lastModified = connection.getHeaderField("Last-Modified");
+				return lastModified == null ? null : lastModified + ' ' + connection.getContentLengthLong();
+			} finally {
+				connection.disconnect();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static boolean isEncrypted(MappedZip zip) {
+		for (MappedZip.Entry entry : zip.entries())
+			if (entry.isEncrypted())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Directory for the "WEB-INF/lib" JARs of the web apps served in place: the
+	 * library JAR cache if configured ("tommy.lib.cache" system property),
+	 * "lib" subdirectory of the base directory otherwise
+	 *
+	 * @param baseDir
+	 * @return
+	 */
+	private static Path getLibCache(Path baseDir) {
+		String libCache = System.getProperty(LibCache.LIB_CACHE_PROPERTY);
+		return libCache == null ? baseDir.resolve(LIB_DIR) : Paths.get(libCache);
+	}
+
+	/**
+	 * Get WAR path (or directory path for the "--app" directory)
 	 *
 	 * @param jarFileName
 	 * @param webappsPath
 	 * @param app
 	 * @param password
+	 * @param snapshot    copy the app directory to the "webapps" directory
+	 * @param downloader  downloader of the HTTP(S) app URL
+	 * @param appSha256   expected SHA-256 of the app URL content, null to skip the check
 	 * @return
 	 * @throws Exception
 	 */
-	public static Path getWarPath(String jarFileName, Path webappsPath, String app, char[] password) throws Exception {
+	public static Path getWarPath(String jarFileName, Path webappsPath, String app, char[] password, boolean snapshot, HttpDownloader downloader, String appSha256) throws Exception {
 		Path   warPath;
 		String warResource = getWarResource();
 		if (warResource == null) { // No embedded app file found
@@ -256,15 +478,21 @@ public class CommonUtils {
 			// --app parameter specified
 			boolean warIsUrl = app.startsWith("file://") || app.startsWith("http://") || app.startsWith("https://");
 			warPath = webappsPath.resolve(APP_WAR);
-			if (warIsUrl) { // URL provided as --app parameter
+			if (app.startsWith("http://") || app.startsWith("https://")) // URL provided as --app parameter
+				downloader.download(app, warPath, appSha256);
+			else if (warIsUrl) { // "file:" URL provided as --app parameter
 				try (InputStream is = new URL(app).openStream()) {
 					Files.copy(is, warPath);
 				}
 			} else { // Directory or file provided as --app parameter
 				Path abs = Paths.get(app).toAbsolutePath();
-				if (Files.isDirectory(abs)) // External directory
-					Zip4jUtils.zipDir(abs, warPath);
-				else // External file
+				if (Files.isDirectory(abs)) { // External directory, served in place
+					if (!snapshot)
+						return abs;
+					warPath = webappsPath.resolve(APP_DIR);
+					copyDir(abs, warPath);
+					return warPath;
+				} else // External file
 					Files.copy(abs, warPath, StandardCopyOption.REPLACE_EXISTING);
 			}
 		} else if (warResource.equals(APP_DIR)) { // Embedded directory
@@ -272,131 +500,134 @@ public class CommonUtils {
 			ZipUtils.copyDir(APP_DIR, Paths.get(jarFileName), warPath);
 		} else // Embedded .war or .zip file
 			warPath = copyWarResource(webappsPath, warResource);
-		Zip4jUtils.decryptZip(warPath, password);
 		return warPath;
 	}
 
 	/**
-	 * Prepare Apache Tomcat configuration
+	 * Prepare Apache Tomcat configuration: the bundled "server.xml" and, only
+	 * when needed (it is large), the bundled "web.xml" are patched by walking
+	 * their DOM (no XPath), both are kept in memory and served with the other
+	 * bundled "conf" files by the returned configuration source
 	 *
-	 * @param confPath
-	 * @param keystorePath
 	 * @param host
 	 * @param port
 	 * @param sslPort
-	 * @param redirect
+	 * @param tuning  connector and thread pool settings
+	 * @param tls     key and TLS session settings, prepared (see {@link TlsSettings#prepare})
+	 * @return configuration source for {@link #prepareTomcat}
 	 * @throws Throwable
 	 */
-	public static void prepareTomcatConf(Path confPath, Path keystorePath, String host, Integer port, Integer sslPort, boolean redirect) throws Throwable {
+	public static MemoryConfigurationSource prepareTomcatConf(String host, Integer port, Integer sslPort, ConnectorTuning tuning, TlsSettings tls) throws Throwable {
+		MemoryConfigurationSource confSource = new MemoryConfigurationSource();
+
 		/* update server.xml document */
-		Document serverXmlDocument = null;
 		try (InputStream is = cl.getResourceAsStream("META-INF/tomcat/conf/server.xml")) {
 			if (is != null) {
-				DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-				DocumentBuilder        builder        = builderFactory.newDocumentBuilder();
-				serverXmlDocument = builder.parse(is);
+				DocumentBuilderFactory builderFactory    = DocumentBuilderFactory.newInstance();
+				DocumentBuilder        builder           = builderFactory.newDocumentBuilder();
+				Document               serverXmlDocument = builder.parse(is);
 
-				/* shutdown port */
-				Node serverNodePort = (Node) XPathFactory.newInstance().newXPath().compile("/Server/@port").evaluate(serverXmlDocument, XPathConstants.NODE);
-				serverNodePort.setNodeValue("0");
+				Element serverEl    = serverXmlDocument.getDocumentElement();
+				Element serviceEl   = getChildElement(serverEl, "Service");
+				Element connectorEl = getChildElement(serviceEl, "Connector");
+				Element engineEl    = getChildElement(serviceEl, "Engine");
+				Element hostEl      = getChildElement(engineEl, "Host");
 
-				Node engineDefaultHostNode = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service/Engine/@defaultHost").evaluate(serverXmlDocument, XPathConstants.NODE);
-				engineDefaultHostNode.setTextContent(host);
+				/* shutdown port */
+				serverEl.setAttribute("port", "0");
 
-				Node engineHostNameNode = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service/Engine/Host/@name").evaluate(serverXmlDocument, XPathConstants.NODE);
-				engineHostNameNode.setTextContent(host);
+				engineEl.setAttribute("defaultHost", host);
+				hostEl.setAttribute("name", host);
+				hostEl.setAttribute("autoDeploy", Boolean.toString(false));
 
-				Node autoDeployNode = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service/Engine/Host/@autoDeploy").evaluate(serverXmlDocument, XPathConstants.NODE);
-				autoDeployNode.setTextContent(Boolean.toString(false));
+				/* thread pool shared by the connectors, declared before them */
+				if (tuning.hasExecutor()) {
+					Element executorEl = serverXmlDocument.createElement("Executor");
+					tuning.applyToExecutor(executorEl);
+					serviceEl.insertBefore(executorEl, connectorEl);
+				}
 
-				Node connectorNode = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service/Connector").evaluate(serverXmlDocument, XPathConstants.NODE);
 				if (port == null)
-					connectorNode.getParentNode().removeChild(connectorNode);
+					serviceEl.removeChild(connectorEl);
 				else {
-					Node portNode = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service/Connector/@port").evaluate(serverXmlDocument, XPathConstants.NODE);
-					portNode.setTextContent(Integer.toString(port)); // update node with real TCP port number
+					connectorEl.setAttribute("port", Integer.toString(port)); // update node with real TCP port number
+					tuning.applyToConnector(connectorEl);
+
+					/* HTTP/2 cleartext: upgrade ("h2c") and prior knowledge */
+					if (tuning.isH2c()) {
+						Element upgradeProtocolEl = serverXmlDocument.createElement("UpgradeProtocol");
+						upgradeProtocolEl.setAttribute("className", "org.apache.coyote.http2.Http2Protocol");
+						tuning.applyToHttp2(upgradeProtocolEl);
+						connectorEl.appendChild(upgradeProtocolEl);
+					}
 				}
 
 				/* Add TLS(SSL) support */
-				if (port != null && sslPort != null) {
-					Node redirectPortNode = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service/Connector/@redirectPort").evaluate(serverXmlDocument, XPathConstants.NODE);
-					redirectPortNode.setTextContent(Integer.toString(sslPort)); // update node with real SSL TCP port number
-				}
+				if (port != null && sslPort != null)
+					connectorEl.setAttribute("redirectPort", Integer.toString(sslPort)); // update node with real SSL TCP port number
 
 				if (sslPort != null) {
-					Node    serviceNode      = (Node) XPathFactory.newInstance().newXPath().compile("/Server/Service").evaluate(serverXmlDocument, XPathConstants.NODE);
 					Element tlsConnectorNode = serverXmlDocument.createElement("Connector");
 
 					tlsConnectorNode.setAttribute("port", Integer.toString(sslPort));
 					tlsConnectorNode.setAttribute("protocol", "org.apache.coyote.http11.Http11NioProtocol");
 					tlsConnectorNode.setAttribute("SSLEnabled", "true");
-					serviceNode.appendChild(tlsConnectorNode);
+					tuning.applyToConnector(tlsConnectorNode);
+					serviceEl.appendChild(tlsConnectorNode);
 
 					Element upgradeProtocolEl = serverXmlDocument.createElement("UpgradeProtocol");
 					upgradeProtocolEl.setAttribute("className", "org.apache.coyote.http2.Http2Protocol");
+					tuning.applyToHttp2(upgradeProtocolEl);
 					tlsConnectorNode.appendChild(upgradeProtocolEl);
 
 					Element sslHostConfigEl = serverXmlDocument.createElement("SSLHostConfig");
+					tls.applyToSslHostConfig(sslHostConfigEl);
 					tlsConnectorNode.appendChild(sslHostConfigEl);
 
 					Element certificateEl = serverXmlDocument.createElement("Certificate");
-					certificateEl.setAttribute("certificateKeystoreFile", "conf/keystore/localhost-rsa.jks");
-					certificateEl.setAttribute("certificateKeystorePassword", "changeit");
-					certificateEl.setAttribute("type", "RSA");
+					tls.applyToCertificate(certificateEl);
 					sslHostConfigEl.appendChild(certificateEl);
 				}
+
+				ByteArrayOutputStream os = new ByteArrayOutputStream();
+				storeXmlDocument(serverXmlDocument, os);
+				confSource.put(Catalina.SERVER_XML, os.toByteArray());
 			}
 		}
 
 		/* update web.xml document */
-		Document webXmlDocument = null;
-		try (InputStream is = cl.getResourceAsStream("META-INF/tomcat/conf/web.xml")) {
-			if (is != null) {
-				DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-				DocumentBuilder        builder        = builderFactory.newDocumentBuilder();
-				webXmlDocument = builder.parse(is);
-
-				/* Add TLS(SSL) support */
-				if (redirect) {
-
-					Node    webAppNode           = (Node) XPathFactory.newInstance().newXPath().compile("/web-app").evaluate(webXmlDocument, XPathConstants.NODE);
-					Element securityConstraintEl = webXmlDocument.createElement("security-constraint");
-					webAppNode.appendChild(securityConstraintEl);
-
-					Element webResourceCollectionEl = webXmlDocument.createElement("web-resource-collection");
-					securityConstraintEl.appendChild(webResourceCollectionEl);
-
-					Element webResourceNameEl = webXmlDocument.createElement("web-resource-name");
-					webResourceNameEl.setTextContent("Secured");
-					webResourceCollectionEl.appendChild(webResourceNameEl);
-
-					Element urlPatternEl = webXmlDocument.createElement("url-pattern");
-					urlPatternEl.setTextContent("/*");
-					webResourceCollectionEl.appendChild(urlPatternEl);
-
-					Element userDataConstraintEl = webXmlDocument.createElement("user-data-constraint");
-					securityConstraintEl.appendChild(userDataConstraintEl);
-
-					Element transportGuaranteeEl = webXmlDocument.createElement("transport-guarantee");
-					transportGuaranteeEl.setTextContent("CONFIDENTIAL");
-					userDataConstraintEl.appendChild(transportGuaranteeEl);
+		if (tuning.hasDefaultServletSettings())
+			try (InputStream is = cl.getResourceAsStream("META-INF/tomcat/conf/web.xml")) {
+				if (is != null) {
+					DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+					DocumentBuilder        builder        = builderFactory.newDocumentBuilder();
+					Document               webXmlDocument = builder.parse(is);
+					Element                webAppEl       = webXmlDocument.getDocumentElement();
+
+					/* static files */
+					for (Node node = webAppEl.getFirstChild(); node != null; node = node.getNextSibling())
+						if (node.getNodeType() == Node.ELEMENT_NODE && "servlet".equals(node.getNodeName()) && "default".equals(getChildElement((Element) node, "servlet-name").getTextContent().trim()))
+							tuning.applyToDefaultServlet((Element) node);
+
+					ByteArrayOutputStream os = new ByteArrayOutputStream();
+					storeXmlDocument(webXmlDocument, os);
+					confSource.put("conf/web.xml", os.toByteArray());
 				}
 			}
-		}
 
-		copyConfDocumentXml(confPath, "server.xml", serverXmlDocument);
-		copyConfDocumentXml(confPath, "web.xml", webXmlDocument);
-
-		copyConfResource(confPath, "tomcat-users.xsd");
-		copyConfResource(confPath, "tomcat-users.xml");
-		copyConfResource(confPath, "logging.properties");
-		copyConfResource(confPath, "jaspic-providers.xsd");
-		copyConfResource(confPath, "jaspic-providers.xml");
-		copyConfResource(confPath, "context.xml");
-		copyConfResource(confPath, "catalina.properties");
-		copyConfResource(confPath, "catalina.policy");
+		return confSource;
+	}
 
-		copyKeystoreResource(keystorePath);
+	/**
+	 * @param parent
+	 * @param name
+	 * @return first child element with the tag name
+	 */
+	private static Element getChildElement(Element parent, String name) {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling())
+			if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName()))
+				return (Element) node;
+		return null;
 	}
 
 	/**
@@ -406,10 +637,11 @@ public class CommonUtils {
 	 * @param catalinaHome
 	 * @param app
 	 * @param argz
+	 * @param confSource configuration (see {@link #prepareTomcatConf})
 	 * @return
 	 * @throws Throwable
 	 */
-	public static Tomcat prepareTomcat(Logger logger, String catalinaHome, String app, String[] argz) throws Throwable {
+	public static Tomcat prepareTomcat(Logger logger, String catalinaHome, String app, String[] argz, ConfigurationSource confSource) throws Throwable {
 		File catalinaBaseFile = Files.createTempDirectory("catalina_base-").toFile().getAbsoluteFile();
 		catalinaBaseFile.deleteOnExit();
 		String catalinaBase = catalinaBaseFile.getAbsolutePath();
@@ -442,8 +674,60 @@ public class CommonUtils {
 		NamingManager.setInitialContextFactoryBuilder(environment -> environment1 -> initialContext);
 
 		tomcat.setAddDefaultWebXmlToWebapp(true);
-		tomcat.init(new CatalinaBaseConfigurationSource(new File(catalinaHome), catalinaHome + '/' + Catalina.SERVER_XML));
+		tomcat.init(confSource);
 
 		return tomcat;
 	}
+
+	/**
+	 * Send GET request and read the response, errors are logged. An HTTPS
+	 * request to "localhost" trusts any certificate: it goes to this server,
+	 * whose key is usually self-signed.
+	 *
+	 * @param logger
+	 * @param url
+	 * @return false if the request failed
+	 */
+	public static boolean sendRequest(Logger logger, String url) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			if (connection instanceof HttpsURLConnection && "localhost".equals(connection.getURL().getHost())) {
+				SSLContext sslContext = SSLContext.getInstance("TLS");
+				sslContext.init(null, new TrustManager[] { new TrustAllManager() }, null);
+				((HttpsURLConnection) connection).setSSLSocketFactory(sslContext.getSocketFactory());
+				((HttpsURLConnection) connection).setHostnameVerifier((hostname, session) -> true);
+			}
+			try (InputStream is = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (is != null)
+					is.transferTo(OutputStream.nullOutputStream());
+			} finally {
+				connection.disconnect();
+			}
+			return true;
+		} catch (IOException | GeneralSecurityException e) {
+			logger.log(Level.WARNING, "Request failed: " + url, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Trusts any server certificate (see {@link #sendRequest})
+	 */
+	private static class TrustAllManager implements X509TrustManager {
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			// any
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
 }
@@ -0,0 +1,106 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class DigestUtils {
+
+	/**
+	 * New SHA-256 message digest
+	 *
+	 * @return
+	 */
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) { // never throws, SHA-256 is mandatory
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * SHA-256 of the file content (hex)
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static String sha256(Path path) throws IOException {
+		try (InputStream is = Files.newInputStream(path)) {
+			return sha256(is);
+		}
+	}
+
+	/**
+	 * SHA-256 of the stream content (hex)
+	 *
+	 * @param is
+	 * @return
+	 * @throws IOException
+	 */
+	public static String sha256(InputStream is) throws IOException {
+		MessageDigest md  = newSha256();
+		byte[]        buf = new byte[64 * 1024];
+		int           n;
+		while ((n = is.read(buf)) != -1)
+			md.update(buf, 0, n);
+		return toHex(md.digest());
+	}
+
+	/**
+	 * SHA-256 of the buffer content (hex)
+	 *
+	 * @param buffer
+	 * @return
+	 */
+	public static String sha256(ByteBuffer buffer) {
+		MessageDigest md = newSha256();
+		md.update(buffer);
+		return toHex(md.digest());
+	}
+
+	/**
+	 * Lower case hex string
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return sb.toString();
+	}
+}
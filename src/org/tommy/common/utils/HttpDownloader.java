@@ -0,0 +1,265 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Downloader of the "--app" URLs.
+ *
+ * Downloads are kept in the cache directory (named after the SHA-256 of the
+ * URL) with their ETag, a later download sends "If-None-Match" and reuses the
+ * cached file on "304 Not Modified". Large files are fetched with concurrent
+ * range requests when the server accepts them and has a strong ETag; the
+ * completed chunks are recorded in a state file, so an interrupted download
+ * is resumed by the next launch. The result is verified against the
+ * expected SHA-256, if any.
+ *
+ * Downloads of the same URL into the same cache directory are serialized,
+ * in the JVM and across JVMs (lock file next to the cached file), the later
+ * one reuses the result of the earlier one.
+ */
+public class HttpDownloader {
+
+	private static final int      CHUNK_SIZE      = 8 * 1024 * 1024;
+	private static final int      MAX_CONNECTIONS = 4;
+	private static final int      BUFFER_SIZE     = 64 * 1024;
+	private static final Duration TIMEOUT         = Duration.ofSeconds(30);
+
+	private static final String PART_EXT  = ".part";
+	private static final String STATE_EXT = ".state";
+	private static final String ETAG_EXT  = ".etag";
+	private static final String LOCK_EXT  = ".lock";
+
+	/* file locks are held by the JVM, threads of one JVM are serialized by these */
+	private static final Map<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+	private final Path       cacheDir;
+	private final HttpClient client;
+
+	/**
+	 *
+	 * @param cacheDir
+	 */
+	public HttpDownloader(Path cacheDir) {
+		this.cacheDir = cacheDir;
+		this.client   = HttpClient.newBuilder().connectTimeout(TIMEOUT).followRedirects(HttpClient.Redirect.NORMAL).build();
+	}
+
+	/**
+	 * Download the URL to the target file (hard link to the cached file, if
+	 * possible)
+	 *
+	 * @param url
+	 * @param target
+	 * @param sha256 expected SHA-256 (hex), null to skip the check
+	 * @throws IOException
+	 */
+	public void download(String url, Path target, String sha256) throws IOException {
+		Files.createDirectories(cacheDir);
+		String        name     = DigestUtils.sha256(ByteBuffer.wrap(url.getBytes(StandardCharsets.UTF_8)));
+		Path          lockFile = cacheDir.resolve(name + LOCK_EXT).toAbsolutePath().normalize();
+		ReentrantLock lock     = LOCKS.computeIfAbsent(lockFile, path -> new ReentrantLock());
+		lock.lock();
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			channel.lock(); // released with the channel
+			download(url, name, target, sha256);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void download(String url, String name, Path target, String sha256) throws IOException {
+		Path   cached   = cacheDir.resolve(name);
+		Path   etagFile = cacheDir.resolve(name + ETAG_EXT);
+		Path   part     = cacheDir.resolve(name + PART_EXT);
+		String etag     = Files.isRegularFile(cached) && Files.isRegularFile(etagFile) ? Files.readString(etagFile) : null;
+
+		/* validator, size and range support */
+		HttpRequest.Builder head = newRequest(url).method("HEAD", HttpRequest.BodyPublishers.noBody());
+		if (etag != null)
+			head.header("If-None-Match", etag);
+		HttpResponse<Void> response = send(head.build(), HttpResponse.BodyHandlers.discarding());
+		if (response.statusCode() == 304 && verify(cached, sha256)) {
+			link(cached, target);
+			return;
+		}
+
+		String  newEtag = response.statusCode() == 200 ? response.headers().firstValue("ETag").orElse(null) : null;
+		long    length  = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+		boolean ranges  = newEtag != null && !newEtag.startsWith("W/") && length > CHUNK_SIZE && response.headers().firstValue("Accept-Ranges").orElse("").equalsIgnoreCase("bytes");
+		Files.deleteIfExists(etagFile);
+		if (ranges)
+			downloadRanges(url, part, length, newEtag);
+		else
+			downloadWhole(url, part);
+		if (!verify(part, sha256)) {
+			Files.deleteIfExists(part);
+			throw new IOException("SHA-256 mismatch: " + url);
+		}
+		CacheUtils.publish(part, cached);
+		if (newEtag != null)
+			Files.writeString(etagFile, newEtag);
+		link(cached, target);
+	}
+
+	private void downloadWhole(String url, Path part) throws IOException {
+		HttpResponse<InputStream> response = send(newRequest(url).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+		try (InputStream is = response.body()) {
+			if (response.statusCode() != 200)
+				throw new IOException("HTTP " + response.statusCode() + ": " + url);
+			Files.copy(is, part, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void downloadRanges(String url, Path part, long length, String etag) throws IOException {
+		int    chunks      = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		Path   state       = part.resolveSibling(part.getFileName() + STATE_EXT);
+		String stateHeader = etag + ' ' + length; // only the same representation is resumed
+		BitSet done        = new BitSet(chunks);
+
+		List<String> lines = Files.isRegularFile(state) && Files.isRegularFile(part) ? Files.readAllLines(state) : List.of();
+		if (!lines.isEmpty() && lines.get(0).equals(stateHeader)) {
+			long size = Files.size(part); // chunks past the end of a truncated file are fetched again
+			for (String line : lines.subList(1, lines.size())) {
+				int chunk = Integer.parseInt(line);
+				if (Math.min((long) (chunk + 1) * CHUNK_SIZE, length) <= size)
+					done.set(chunk);
+			}
+		} else {
+			Files.deleteIfExists(part);
+			Files.writeString(state, stateHeader + '\n');
+		}
+
+		try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			int[] todo = new int[chunks - done.cardinality()];
+			for (int i = done.nextClearBit(0), j = 0; i < chunks; i = done.nextClearBit(i + 1))
+				todo[j++] = i;
+
+			AtomicInteger              next    = new AtomicInteger();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			int                        workers = Math.max(1, Math.min(MAX_CONNECTIONS, todo.length));
+			ForkJoinPool               pool    = new ForkJoinPool(workers);
+			for (int w = 0; w < workers; w++)
+				pool.execute(() -> {
+					for (int j; failure.get() == null && (j = next.getAndIncrement()) < todo.length;)
+						try {
+							downloadChunk(url, channel, todo[j], length, etag);
+							channel.force(false); // the chunk is on disk before it is recorded
+							synchronized (state) {
+								Files.writeString(state, todo[j] + "\n", StandardOpenOption.APPEND);
+							}
+						} catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						}
+				});
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while downloading " + url);
+			}
+			Throwable e = failure.get();
+			if (e instanceof IOException)
+				throw (IOException) e;
+			if (e != null)
+				throw new IOException(e);
+		}
+		Files.deleteIfExists(state);
+	}
+
+	private void downloadChunk(String url, FileChannel channel, int chunk, long length, String etag) throws IOException {
+		long                      from     = (long) chunk * CHUNK_SIZE;
+		long                      to       = Math.min(from + CHUNK_SIZE, length) - 1;
+		HttpRequest               request  = newRequest(url).header("Range", "bytes=" + from + '-' + to).header("If-Range", etag).GET().build();
+		HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+		try (InputStream is = response.body()) {
+			if (response.statusCode() != 206) // 200 if the file has changed since
+				throw new IOException("HTTP " + response.statusCode() + " for range " + from + '-' + to + ": " + url);
+			byte[] buffer   = new byte[BUFFER_SIZE];
+			long   position = from;
+			for (int n; position <= to && (n = is.read(buffer, 0, (int) Math.min(buffer.length, to + 1 - position))) != -1;)
+				for (ByteBuffer src = ByteBuffer.wrap(buffer, 0, n); src.hasRemaining();)
+					position += channel.write(src, position);
+			if (position != to + 1)
+				throw new IOException("Incomplete range " + from + '-' + to + ": " + url);
+		}
+	}
+
+	private HttpRequest.Builder newRequest(String url) {
+		return HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT);
+	}
+
+	private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+		try {
+			return client.send(request, bodyHandler);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while downloading " + request.uri());
+		}
+	}
+
+	private static boolean verify(Path path, String sha256) throws IOException {
+		return sha256 == null || sha256.equalsIgnoreCase(DigestUtils.sha256(path));
+	}
+
+	private static void link(Path cached, Path target) throws IOException {
+		Files.deleteIfExists(target);
+		try {
+			Files.createLink(target, cached);
+		} catch (IOException | UnsupportedOperationException e) { // other file system
+			Files.copy(cached, target);
+		}
+	}
+}
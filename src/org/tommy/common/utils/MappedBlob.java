@@ -0,0 +1,345 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only file of named byte blobs, memory-mapped (shared by the JVMs that
+ * open the same file) and looked up through a minimal perfect hash index.
+ *
+ * Layout (little-endian): header ("TOMMYBLB", version, entry count, bucket
+ * count), bucket seeds, entry slots (data offset, size, last modified, name
+ * offset and length), UTF-8 names, data. The index is "hash and displace":
+ * the name hash with seed 0 selects a bucket, the hash with the seed of the
+ * bucket selects the slot, the name stored in the slot confirms the match.
+ * The file is mapped in segments of 1 GB, data never crosses a segment
+ * boundary, so the file can be larger than 2 GB.
+ */
+public class MappedBlob {
+
+	private static final long MAGIC       = 0x424c42594d4d4f54L; // "TOMMYBLB"
+	private static final int  VERSION     = 1;
+	private static final int  HEADER_SIZE = 24;
+	private static final int  SLOT_SIZE   = 32;
+	private static final int  BUCKET_LOAD = 4;   // average keys per bucket
+	private static final int  ALIGN       = 8;
+
+	/**
+	 * Maximum size of the segments the file is mapped in, larger data can't be
+	 * stored
+	 */
+	public static final long SEGMENT_SIZE = 1L << 30;
+
+	/**
+	 * Blob: name, size and last modification time, its offset in the file is
+	 * assigned when written
+	 */
+	public static class Entry {
+
+		private final String name;
+		private final long   size;
+		private final long   lastModified;
+		private long         offset;
+
+		/**
+		 *
+		 * @param name
+		 * @param size
+		 * @param lastModified milliseconds since the epoch
+		 */
+		public Entry(String name, long size, long lastModified) {
+			this.name         = name;
+			this.size         = size;
+			this.lastModified = lastModified;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+
+	/**
+	 * Content of the blobs to write
+	 */
+	public interface Content {
+
+		/**
+		 * @param name
+		 * @return new stream
+		 * @throws IOException
+		 */
+		InputStream open(String name) throws IOException;
+	}
+
+	private final ByteBuffer[] segments;
+	private final ByteBuffer   index;   // segment 0
+	private final int          count;
+	private final int          bucketCount;
+
+	private MappedBlob(ByteBuffer[] segments) throws IOException {
+		this.segments = segments;
+		this.index    = segments[0].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (index.limit() < HEADER_SIZE || index.getLong(0) != MAGIC || index.getInt(8) != VERSION)
+			throw new IOException("Not a blob file");
+		this.count       = index.getInt(12);
+		this.bucketCount = index.getInt(16);
+	}
+
+	/**
+	 * Map the file
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException if the file is not a blob file
+	 */
+	public static MappedBlob open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long         size     = channel.size();
+			ByteBuffer[] segments = new ByteBuffer[(int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; i++)
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, i * SEGMENT_SIZE, Math.min(SEGMENT_SIZE, size - i * SEGMENT_SIZE));
+			return new MappedBlob(segments);
+		}
+	}
+
+	/**
+	 * Load the whole file into physical memory
+	 */
+	public void load() {
+		for (ByteBuffer segment : segments)
+			((MappedByteBuffer) segment).load();
+	}
+
+	/**
+	 * @return number of blobs
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Find blob
+	 *
+	 * @param name
+	 * @return entry or null if not found
+	 */
+	public Entry getEntry(String name) {
+		if (count == 0)
+			return null;
+		byte[] key    = name.getBytes(StandardCharsets.UTF_8);
+		int    bucket = (int) Long.remainderUnsigned(hash(key, 0), bucketCount);
+		int    seed   = index.getInt(HEADER_SIZE + bucket * 4);
+		int    slot   = HEADER_SIZE + bucketCount * 4 + (int) Long.remainderUnsigned(hash(key, seed), count) * SLOT_SIZE;
+
+		int nameOffset = index.getInt(slot + 24);
+		int nameLength = index.getInt(slot + 28);
+		if (nameLength != key.length)
+			return null;
+		for (int i = 0; i < key.length; i++)
+			if (index.get(nameOffset + i) != key[i])
+				return null;
+
+		Entry entry = new Entry(name, index.getLong(slot + 8), index.getLong(slot + 16));
+		entry.offset = index.getLong(slot);
+		return entry;
+	}
+
+	/**
+	 * Get blob content: slice of the mapped file
+	 *
+	 * @param entry
+	 * @return read-only buffer, from position 0 to limit
+	 */
+	public ByteBuffer getData(Entry entry) {
+		ByteBuffer segment = segments[(int) (entry.offset / SEGMENT_SIZE)].duplicate();
+		int        start   = (int) (entry.offset % SEGMENT_SIZE);
+		segment.position(start).limit(start + (int) entry.size);
+		return segment.slice();
+	}
+
+	/**
+	 * Write blob file
+	 *
+	 * @param target
+	 * @param entries blobs, unique names, not larger than {@link #SEGMENT_SIZE}
+	 * @param content
+	 * @throws IOException if the content of a blob doesn't match its size
+	 */
+	public static void write(Path target, List<Entry> entries, Content content) throws IOException {
+		int      count       = entries.size();
+		int      bucketCount = Math.max(1, (count + BUCKET_LOAD - 1) / BUCKET_LOAD);
+		byte[][] keys        = new byte[count][];
+		for (int i = 0; i < count; i++)
+			keys[i] = entries.get(i).name.getBytes(StandardCharsets.UTF_8);
+
+		/* index */
+		int[] slots     = new int[count];
+		int[] seeds     = buildIndex(keys, bucketCount, slots);
+		int   namesSize = 0;
+		for (byte[] key : keys)
+			namesSize += key.length;
+		long indexSize = (long) HEADER_SIZE + bucketCount * 4L + (long) count * SLOT_SIZE + namesSize;
+		if (indexSize > SEGMENT_SIZE)
+			throw new IOException("Too many blobs");
+
+		/* data layout */
+		long offset = align(indexSize);
+		for (Entry entry : entries) {
+			if (entry.size > SEGMENT_SIZE)
+				throw new IOException("Blob is too large: " + entry.name);
+			if (offset / SEGMENT_SIZE != (offset + entry.size - 1) / SEGMENT_SIZE)
+				offset = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE; // next segment
+			entry.offset = offset;
+			offset       = align(offset + entry.size);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) indexSize).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(MAGIC).putInt(VERSION).putInt(count).putInt(bucketCount).putInt(0);
+		for (int seed : seeds)
+			buffer.putInt(seed);
+		int slotsStart = buffer.position();
+		int nameOffset = slotsStart + count * SLOT_SIZE;
+		for (int i = 0; i < count; i++) {
+			Entry entry = entries.get(i);
+			buffer.position(slotsStart + slots[i] * SLOT_SIZE);
+			buffer.putLong(entry.offset).putLong(entry.size).putLong(entry.lastModified).putInt(nameOffset).putInt(keys[i].length);
+			buffer.position(nameOffset);
+			buffer.put(keys[i]);
+			nameOffset += keys[i].length;
+		}
+		buffer.clear();
+
+		try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(1), offset - 1); // full size, transferFrom() doesn't write past the end
+			while (buffer.hasRemaining())
+				channel.write(buffer, buffer.position());
+			for (Entry entry : entries)
+				try (InputStream is = content.open(entry.name); ReadableByteChannel src = Channels.newChannel(is)) {
+					long written = 0;
+					for (long n; written < entry.size && (n = channel.transferFrom(src, entry.offset + written, entry.size - written)) > 0;)
+						written += n;
+					if (written != entry.size || is.read() != -1)
+						throw new IOException("Content doesn't match the size: " + entry.name);
+				}
+		}
+	}
+
+	/**
+	 * Hash and displace: bucket seeds that put every key into its own slot
+	 *
+	 * @param keys
+	 * @param bucketCount
+	 * @param slots       result: slot of every key
+	 * @return seeds of the buckets
+	 */
+	private static int[] buildIndex(byte[][] keys, int bucketCount, int[] slots) {
+		int count = keys.length;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<Integer>[] buckets = new List[bucketCount];
+		for (int i = 0; i < count; i++) {
+			int bucket = (int) Long.remainderUnsigned(hash(keys[i], 0), bucketCount);
+			if (buckets[bucket] == null)
+				buckets[bucket] = new ArrayList<>();
+			buckets[bucket].add(i);
+		}
+		Integer[] order = new Integer[bucketCount];
+		for (int i = 0; i < bucketCount; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(buckets[b] == null ? 0 : buckets[b].size(), buckets[a] == null ? 0 : buckets[a].size()));
+
+		int[]     seeds       = new int[bucketCount];
+		boolean[] occupied    = new boolean[count];
+		int[]     bucketSlots = new int[count];
+		for (int bucket : order) {
+			List<Integer> bucketKeys = buckets[bucket];
+			if (bucketKeys == null)
+				break; // sorted, the rest is empty too
+			for (int seed = 1;; seed++) {
+				int n = 0;
+				for (int key : bucketKeys) {
+					int slot = (int) Long.remainderUnsigned(hash(keys[key], seed), count);
+					if (occupied[slot])
+						break;
+					occupied[slot]   = true; // taken tentatively, also against the keys of the same bucket
+					bucketSlots[n++] = slot;
+				}
+				if (n == bucketKeys.size()) {
+					seeds[bucket] = seed;
+					for (int i = 0; i < n; i++)
+						slots[bucketKeys.get(i)] = bucketSlots[i];
+					break;
+				}
+				for (int i = 0; i < n; i++)
+					occupied[bucketSlots[i]] = false;
+			}
+		}
+		return seeds;
+	}
+
+	/**
+	 * FNV-1a with a seeded basis and a final avalanche (MurmurHash3 fmix64)
+	 */
+	private static long hash(byte[] key, int seed) {
+		long h = 0xcbf29ce484222325L ^ (seed * 0x9E3779B97F4A7C15L);
+		for (byte b : key)
+			h = (h ^ (b & 0xff)) * 0x100000001b3L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long align(long offset) {
+		return (offset + ALIGN - 1) & -ALIGN;
+	}
+}
@@ -0,0 +1,482 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only ZIP archive over a byte buffer (usually a memory-mapped file or a
+ * region of one).
+ *
+ * The central directory is read once. Stored entries are served as slices of
+ * the underlying buffer without copying, deflated entries are inflated on
+ * demand. Nested archives (a JAR inside a JAR) are opened the same way.
+ */
+public class MappedZip {
+
+	private static final int LOCAL_HEADER_SIG     = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIG   = 0x02014b50;
+	private static final int END_HEADER_SIG       = 0x06054b50;
+	private static final int ZIP64_END_HEADER_SIG = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIG    = 0x07064b50;
+
+	private static final int LOCAL_HEADER_SIZE   = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_HEADER_SIZE     = 22;
+	private static final int ZIP64_LOCATOR_SIZE  = 20;
+
+	private static final int  ZIP64_MAGIC_COUNT = 0xFFFF;
+	private static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+	private static final int  ZIP64_EXTRA_ID    = 0x0001;
+
+	private static final int FLAG_ENCRYPTED = 0x0001;
+
+	/**
+	 * ZIP archive entry (central directory record)
+	 */
+	public static final class Entry {
+		private final String name;
+		private final int    versionNeeded;
+		private final int    method;
+		private final int    flags;
+		private final long   crc;
+		private final long   compressedSize;
+		private final long   size;
+		private final long   dosTime;
+		private final long   localHeaderOffset;
+		private long         dataOffset = -1;
+
+		Entry(String name, int versionNeeded, int method, int flags, long crc, long compressedSize, long size, long dosTime, long localHeaderOffset) {
+			this.name              = name;
+			this.versionNeeded     = versionNeeded;
+			this.method            = method;
+			this.flags             = flags;
+			this.crc               = crc;
+			this.compressedSize    = compressedSize;
+			this.size              = size;
+			this.dosTime           = dosTime;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Version needed to extract (e.g. 20 for deflate, 45 for ZIP64, 51 for
+		 * AES)
+		 *
+		 * @return
+		 */
+		public int getVersionNeeded() {
+			return versionNeeded;
+		}
+
+		public int getMethod() {
+			return method;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Last modification time (MS-DOS date and time)
+		 *
+		 * @return
+		 */
+		public long getDosTime() {
+			return dosTime;
+		}
+
+		public long getLocalHeaderOffset() {
+			return localHeaderOffset;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		public boolean isEncrypted() {
+			return (flags & FLAG_ENCRYPTED) != 0;
+		}
+
+		public boolean isStored() {
+			return method == ZipEntry.STORED;
+		}
+
+		/**
+		 * Last modification time (milliseconds since the epoch)
+		 *
+		 * @return
+		 */
+		public long getTime() {
+			return dosToJavaTime(dosTime);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final ByteBuffer        buffer;
+	private final List<Entry>       entries;
+	private volatile Map<String, Entry> entryMap;
+
+	/**
+	 * Map the whole file and read its central directory
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException if the file is not a ZIP archive or is larger than 2 GB
+	 */
+	public static MappedZip open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new ZipException("Archive is too large to be mapped: " + path);
+			return new MappedZip(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/**
+	 *
+	 * @param buffer ZIP archive content, from position 0 to limit
+	 * @throws ZipException
+	 */
+	public MappedZip(ByteBuffer buffer) throws ZipException {
+		this.buffer  = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.entries = Collections.unmodifiableList(readCentralDirectory(this.buffer));
+	}
+
+	/**
+	 * All entries in central directory order
+	 *
+	 * @return
+	 */
+	public List<Entry> entries() {
+		return entries;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Archive content
+	 *
+	 * @return
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Find entry by name (the first one wins for duplicated names)
+	 *
+	 * @param name
+	 * @return entry or null
+	 */
+	public Entry getEntry(String name) {
+		Map<String, Entry> map = entryMap;
+		if (map == null) {
+			map = new HashMap<>(entries.size() * 4 / 3 + 1);
+			for (Entry entry : entries)
+				map.putIfAbsent(entry.name, entry);
+			entryMap = map;
+		}
+		return map.get(name);
+	}
+
+	/**
+	 * Offset of the entry data (just after the local header)
+	 *
+	 * @param entry
+	 * @return
+	 * @throws ZipException
+	 */
+	public long getDataOffset(Entry entry) throws ZipException {
+		long offset = entry.dataOffset;
+		if (offset < 0) {
+			int lho = checkedOffset(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+			if (buffer.getInt(lho) != LOCAL_HEADER_SIG)
+				throw new ZipException("Invalid local header: " + entry.name);
+			offset           = lho + LOCAL_HEADER_SIZE + (buffer.getShort(lho + 26) & 0xFFFF) + (buffer.getShort(lho + 28) & 0xFFFF);
+			entry.dataOffset = offset;
+		}
+		return offset;
+	}
+
+	/**
+	 * Extra field of the entry local header. No copy is made.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws ZipException
+	 */
+	public ByteBuffer getLocalExtra(Entry entry) throws ZipException {
+		int lho      = checkedOffset(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+		int nameLen  = buffer.getShort(lho + 26) & 0xFFFF;
+		int extraLen = buffer.getShort(lho + 28) & 0xFFFF;
+		int offset   = checkedOffset(lho + LOCAL_HEADER_SIZE + nameLen, extraLen);
+		return buffer.duplicate().position(offset).limit(offset + extraLen).slice();
+	}
+
+	/**
+	 * Entry data as it is stored in the archive (compressed, if the entry is
+	 * compressed). No copy is made.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws ZipException
+	 */
+	public ByteBuffer getRawData(Entry entry) throws ZipException {
+		int offset = checkedOffset(getDataOffset(entry), entry.compressedSize);
+		return buffer.duplicate().position(offset).limit(offset + (int) entry.compressedSize).slice();
+	}
+
+	/**
+	 * Uncompressed entry data. Stored entries are returned as slices of the
+	 * archive buffer, deflated entries are inflated into a new heap buffer.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	public ByteBuffer getData(Entry entry) throws IOException {
+		checkReadable(entry);
+		ByteBuffer raw = getRawData(entry);
+		if (entry.method == ZipEntry.STORED)
+			return raw;
+		if (entry.size > Integer.MAX_VALUE - 8)
+			throw new ZipException("Entry is too large: " + entry.name);
+		byte[]   data     = new byte[(int) entry.size];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(raw);
+			int n = 0;
+			while (n < data.length) {
+				int k = inflater.inflate(data, n, data.length - n);
+				if (k == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				n += k;
+			}
+			if (n != data.length)
+				throw new ZipException("Invalid entry size: " + entry.name);
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid deflated data: " + entry.name + " (" + e.getMessage() + ")");
+		} finally {
+			inflater.end();
+		}
+		return ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Open entry data as a stream. Nothing is copied for stored entries.
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream getInputStream(Entry entry) throws IOException {
+		checkReadable(entry);
+		InputStream is = new ByteBufferInputStream(getRawData(entry));
+		if (entry.method == ZipEntry.STORED)
+			return is;
+		int bufferSize = (int) Math.max(512, Math.min(entry.compressedSize, 64 * 1024));
+		return new InflaterInputStream(is, new Inflater(true), bufferSize) {
+			private boolean closed;
+
+			@Override
+			public int available() throws IOException {
+				return closed || inf.finished() ? 0 : 1;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					inf.end();
+					super.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Open an archive stored inside this archive
+	 *
+	 * @param entry
+	 * @return
+	 * @throws IOException
+	 */
+	public MappedZip getNested(Entry entry) throws IOException {
+		return new MappedZip(getData(entry));
+	}
+
+	private static void checkReadable(Entry entry) throws ZipException {
+		if (entry.isEncrypted())
+			throw new ZipException("Entry is encrypted: " + entry.name);
+		if (entry.method != ZipEntry.STORED && entry.method != ZipEntry.DEFLATED)
+			throw new ZipException("Unsupported compression method " + entry.method + ": " + entry.name);
+	}
+
+	private int checkedOffset(long offset, long length) throws ZipException {
+		if (offset < 0 || length < 0 || offset + length > buffer.limit())
+			throw new ZipException("Invalid entry offset");
+		return (int) offset;
+	}
+
+	private static List<Entry> readCentralDirectory(ByteBuffer buffer) throws ZipException {
+		int limit = buffer.limit();
+		int end   = -1;
+		for (int pos = limit - END_HEADER_SIZE, min = Math.max(0, limit - END_HEADER_SIZE - 0xFFFF); pos >= min; pos--)
+			if (buffer.getInt(pos) == END_HEADER_SIG) {
+				end = pos;
+				break;
+			}
+		if (end == -1)
+			throw new ZipException("End of central directory record is not found");
+
+		long total    = buffer.getShort(end + 10) & 0xFFFF;
+		long cdSize   = buffer.getInt(end + 12) & ZIP64_MAGIC_VALUE;
+		long cdOffset = buffer.getInt(end + 16) & ZIP64_MAGIC_VALUE;
+		if (total == ZIP64_MAGIC_COUNT || cdSize == ZIP64_MAGIC_VALUE || cdOffset == ZIP64_MAGIC_VALUE) {
+			int locator = end - ZIP64_LOCATOR_SIZE;
+			if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR_SIG) {
+				long zip64End = buffer.getLong(locator + 8);
+				if (zip64End < 0 || zip64End + 56 > limit || buffer.getInt((int) zip64End) != ZIP64_END_HEADER_SIG)
+					throw new ZipException("Invalid ZIP64 end of central directory record");
+				total    = buffer.getLong((int) zip64End + 32);
+				cdSize   = buffer.getLong((int) zip64End + 40);
+				cdOffset = buffer.getLong((int) zip64End + 48);
+			}
+		}
+		if (cdOffset < 0 || cdSize < 0 || cdOffset + cdSize > limit || total > cdSize / CENTRAL_HEADER_SIZE)
+			throw new ZipException("Invalid central directory");
+
+		List<Entry> list = new ArrayList<>((int) total);
+		int         pos  = (int) cdOffset;
+		int         cdEnd = (int) (cdOffset + cdSize);
+		while (pos + CENTRAL_HEADER_SIZE <= cdEnd && buffer.getInt(pos) == CENTRAL_HEADER_SIG) {
+			int  version    = buffer.getShort(pos + 6) & 0xFFFF;
+			int  flags      = buffer.getShort(pos + 8) & 0xFFFF;
+			int  method     = buffer.getShort(pos + 10) & 0xFFFF;
+			long dosTime    = buffer.getInt(pos + 12) & ZIP64_MAGIC_VALUE;
+			long crc        = buffer.getInt(pos + 16) & ZIP64_MAGIC_VALUE;
+			long csize      = buffer.getInt(pos + 20) & ZIP64_MAGIC_VALUE;
+			long size       = buffer.getInt(pos + 24) & ZIP64_MAGIC_VALUE;
+			int  nameLen    = buffer.getShort(pos + 28) & 0xFFFF;
+			int  extraLen   = buffer.getShort(pos + 30) & 0xFFFF;
+			int  commentLen = buffer.getShort(pos + 32) & 0xFFFF;
+			long lho        = buffer.getInt(pos + 42) & ZIP64_MAGIC_VALUE;
+			int  next       = pos + CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+			if (next > cdEnd)
+				throw new ZipException("Invalid central directory record");
+
+			byte[] nameBytes = new byte[nameLen];
+			buffer.get(pos + CENTRAL_HEADER_SIZE, nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			if (size == ZIP64_MAGIC_VALUE || csize == ZIP64_MAGIC_VALUE || lho == ZIP64_MAGIC_VALUE) {
+				/* ZIP64 extended information extra field */
+				int extra    = pos + CENTRAL_HEADER_SIZE + nameLen;
+				int extraEnd = extra + extraLen;
+				while (extra + 4 <= extraEnd) {
+					int id  = buffer.getShort(extra) & 0xFFFF;
+					int len = buffer.getShort(extra + 2) & 0xFFFF;
+					if (id == ZIP64_EXTRA_ID) {
+						int p = extra + 4;
+						if (size == ZIP64_MAGIC_VALUE && p + 8 <= extraEnd) {
+							size  = buffer.getLong(p);
+							p    += 8;
+						}
+						if (csize == ZIP64_MAGIC_VALUE && p + 8 <= extraEnd) {
+							csize  = buffer.getLong(p);
+							p     += 8;
+						}
+						if (lho == ZIP64_MAGIC_VALUE && p + 8 <= extraEnd)
+							lho = buffer.getLong(p);
+						break;
+					}
+					extra += 4 + len;
+				}
+			}
+			list.add(new Entry(name, version, method, flags, crc, csize, size, dosTime, lho));
+			pos = next;
+		}
+		return list;
+	}
+
+	private static long dosToJavaTime(long dosTime) {
+		try {
+			LocalDateTime ldt = LocalDateTime.of( //
+					(int) (((dosTime >> 25) & 0x7f) + 1980), //
+					(int) ((dosTime >> 21) & 0x0f), //
+					(int) ((dosTime >> 16) & 0x1f), //
+					(int) ((dosTime >> 11) & 0x1f), //
+					(int) ((dosTime >> 5) & 0x3f), //
+					(int) ((dosTime << 1) & 0x3e));
+			return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		} catch (RuntimeException e) { // invalid date
+			return 0;
+		}
+	}
+}
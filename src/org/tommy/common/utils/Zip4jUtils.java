@@ -27,13 +27,15 @@ E-Mail: xnbox.team@outlook.com
 
 package org.tommy.common.utils;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
 import net.lingala.zip4j.model.ZipParameters;
 import net.lingala.zip4j.model.enums.CompressionLevel;
 
@@ -41,22 +43,74 @@ public class Zip4jUtils {
 
 	/**
 	 * 
+	 * @param zip
+	 * @return true if the ZIP archive has encrypted entries
+	 * @throws IOException
+	 */
+	public static boolean isEncrypted(Path zip) throws IOException {
+		try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+			return zipFile.isEncrypted();
+		}
+	}
+
+	/**
+	 * Decrypt the ZIP archive in place.
+	 *
+	 * The entries are decrypted and inflated in parallel, one worker per
+	 * available processor, each worker has its own ZIP file instance. They are
+	 * written uncompressed, so the result can be served without inflating it
+	 * again (see {@link ZipUtils#writeStored}).
+	 *
 	 * @param encryptedZip
 	 * @param password
 	 * @throws IOException
 	 */
 	public static void decryptZip(Path encryptedZip, char[] password) throws IOException {
-		ZipFile zipFile = new ZipFile(encryptedZip.toFile());
-		if (!zipFile.isEncrypted())
-			return;
-		zipFile.setPassword(password);
-		Path tmpPath = Files.createTempDirectory("xnbox-tmp");
-		zipFile.extractAll(tmpPath.toString());
-		ZipParameters zipParameters = new ZipParameters();
-		zipParameters.setIncludeRootFolder(false);
-		zipParameters.setCompressionLevel(CompressionLevel.FASTEST);
-		zipFile.addFolder(tmpPath.toFile(), zipParameters);
-		Files.walk(tmpPath).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		List<FileHeader> fileHeaders;
+		try (ZipFile zipFile = new ZipFile(encryptedZip.toFile())) {
+			if (!zipFile.isEncrypted())
+				return;
+			fileHeaders = zipFile.getFileHeaders();
+		}
+
+		int      count    = fileHeaders.size();
+		String[] names    = new String[count];
+		long[]   sizes    = new long[count];
+		long[]   dosTimes = new long[count];
+		for (int i = 0; i < count; i++) {
+			FileHeader fileHeader = fileHeaders.get(i);
+			names[i]    = fileHeader.getFileName();
+			sizes[i]    = fileHeader.isDirectory() ? 0 : fileHeader.getUncompressedSize();
+			dosTimes[i] = fileHeader.getLastModifiedTime();
+		}
+
+		/* zip4j ZipFile is not thread-safe, every worker opens its own */
+		List<ZipFile>        zipFiles      = Collections.synchronizedList(new ArrayList<>());
+		ThreadLocal<ZipFile> workerZipFile = ThreadLocal.withInitial(() -> {
+			ZipFile z = new ZipFile(encryptedZip.toFile(), password);
+			zipFiles.add(z);
+			return z;
+		});
+		Path tmpPath = CacheUtils.createTempFile(encryptedZip.toAbsolutePath().getParent(), ".zip");
+		try {
+			ZipUtils.writeStored(tmpPath, names, sizes, dosTimes, i -> {
+				ZipFile z = workerZipFile.get();
+				return z.getInputStream(z.getFileHeaders().get(i)); // same central directory order in every instance
+			}, Runtime.getRuntime().availableProcessors());
+			closeAll(zipFiles);
+			CacheUtils.publish(tmpPath, encryptedZip);
+		} finally {
+			closeAll(zipFiles);
+			CacheUtils.discard(tmpPath);
+		}
+	}
+
+	private static void closeAll(List<ZipFile> zipFiles) throws IOException {
+		synchronized (zipFiles) {
+			for (ZipFile zipFile : zipFiles)
+				zipFile.close();
+			zipFiles.clear();
+		}
 	}
 
 	/**
@@ -27,18 +27,57 @@ E-Mail: xnbox.team@outlook.com
 
 package org.tommy.common.utils;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Enumeration;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 public class ZipUtils {
 
+	private static final int LOCAL_HEADER_SIG     = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIG   = 0x02014b50;
+	private static final int DATA_DESCRIPTOR_SIG  = 0x08074b50;
+	private static final int END_HEADER_SIG       = 0x06054b50;
+	private static final int ZIP64_END_HEADER_SIG = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIG    = 0x07064b50;
+
+	private static final int LOCAL_HEADER_SIZE   = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+
+	private static final int ZIP64_MAGIC_COUNT      = 0xFFFF;
+	private static final int ZIP64_MAGIC_VALUE      = 0xFFFFFFFF;
+	private static final int ZIP64_EXTRA_ID         = 0x0001;
+	private static final int ZIP64_LOCAL_EXTRA_SIZE = 4 + 8 + 8;     // both sizes
+	private static final int ZIP64_MAX_EXTRA_SIZE   = 4 + 8 + 8 + 8; // both sizes and the offset
+
+	private static final short VERSION_20 = 20;
+	private static final short VERSION_45 = 45;
+
+	private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+	private static final int FLAG_UTF8            = 0x0800;
+
+	private static final ByteBuffer NO_EXTRA = ByteBuffer.allocate(0);
+
+	private static final int  END_HEADER_SIZE  = 22;
+	private static final int  ZIP64_END_SIZE   = 56 + 20;
+	private static final long ZIP32_MAX        = 0xFFFFFFFFL;
+	private static final int  COPY_BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 * 
 	 * @param zipFilePath
@@ -55,33 +94,299 @@ public class ZipUtils {
 	}
 
 	/**
-	 * 
+	 * Copy files of the directory inside of the ZIP archive to a new ZIP
+	 * archive, the directory prefix is stripped from the entry names.
+	 *
+	 * Entry data is copied as it is stored (compressed, and encrypted, if it
+	 * is), only the local and central headers are rewritten (ZIP64 extra
+	 * fields where the sizes or offsets need them). Memory use doesn't depend
+	 * on the entry sizes.
+	 *
 	 * @param dir
 	 * @param inZip
 	 * @param outZip
 	 * @throws IOException
 	 */
 	public static void copyDir(String dir, Path inZip, Path outZip) throws IOException {
-		try (ZipFile zipFileIn = new ZipFile(inZip.toFile()); ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outZip.toFile()))) {
-			Enumeration<? extends ZipEntry> zipEntries = zipFileIn.entries();
-			while (zipEntries.hasMoreElements()) {
-				ZipEntry zipEntry  = zipEntries.nextElement();
-				String   entryName = zipEntry.getName();
-				if (entryName.startsWith(dir + '/') && entryName.length() > dir.length() + 1) {
-					Path   p            = Paths.get(entryName);
-					String newEntryName = p.subpath(1, p.getNameCount()).toString();
-					System.out.println(zipEntry);
-					try (InputStream is = zipFileIn.getInputStream(zipEntry)) {
-						if (!zipEntry.isDirectory()) {
-							ZipEntry outZipEntry = new ZipEntry(newEntryName);
-							zos.putNextEntry(outZipEntry);
-							zos.write(is.readAllBytes());
-							zos.flush();
-							zos.closeEntry();
+		MappedZip  zip     = MappedZip.open(inZip);
+		String     prefix  = dir + '/';
+		ByteBuffer central = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer header  = ByteBuffer.allocate(LOCAL_HEADER_SIZE + 0xFFFF + 0xFFFF + ZIP64_LOCAL_EXTRA_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		int        count   = 0;
+		try (FileChannel channel = FileChannel.open(outZip, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (MappedZip.Entry entry : zip.entries()) {
+				String entryName = entry.getName();
+				if (!entryName.startsWith(prefix) || entryName.length() == prefix.length() || entry.isDirectory())
+					continue;
+				byte[]     name   = entryName.substring(prefix.length()).getBytes(StandardCharsets.UTF_8);
+				ByteBuffer extra  = stripZip64Extra(zip.getLocalExtra(entry));
+				ByteBuffer data   = zip.getRawData(entry);
+				long       offset = channel.position();
+				int        flags  = entry.getFlags();
+				if (name.length != entryName.length() - prefix.length())
+					flags |= FLAG_UTF8;
+
+				if (extra.remaining() + ZIP64_MAX_EXTRA_SIZE > 0xFFFF)
+					throw new ZipException("Extra field too large: " + entryName);
+
+				/* local header, data and data descriptor (if the source has it) */
+				header.clear();
+				boolean zip64 = putLocalHeader(header, entry.getVersionNeeded(), flags, entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(), name, extra);
+				writeFully(channel, header.flip());
+				writeFully(channel, data);
+				if ((flags & FLAG_DATA_DESCRIPTOR) != 0) {
+					header.clear();
+					header.putInt(DATA_DESCRIPTOR_SIG).putInt((int) entry.getCrc());
+					if (zip64) // sizes are 8 bytes long after a ZIP64 local header
+						header.putLong(entry.getCompressedSize()).putLong(entry.getSize());
+					else
+						header.putInt((int) entry.getCompressedSize()).putInt((int) entry.getSize());
+					writeFully(channel, header.flip());
+				}
+
+				/* central directory record */
+				int recordSize = CENTRAL_HEADER_SIZE + name.length + extra.remaining() + ZIP64_MAX_EXTRA_SIZE;
+				if (central.remaining() < recordSize)
+					central = ByteBuffer.allocate(Math.max(central.capacity() * 2, central.position() + recordSize)).order(ByteOrder.LITTLE_ENDIAN).put(central.flip());
+				putCentralHeader(central, entry.getVersionNeeded(), flags, entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(), offset, name, extra);
+				count++;
+			}
+
+			long cdOffset = channel.position();
+			long cdSize   = central.position();
+			writeFully(channel, central.flip());
+
+			/* end of central directory */
+			header.clear();
+			putEnd(header, count, cdSize, cdOffset, channel.position());
+			writeFully(channel, header.flip());
+		}
+	}
+
+	/**
+	 * Content of the entries for {@link #writeStored}
+	 */
+	public interface EntrySource {
+
+		/**
+		 * Called concurrently from the worker threads
+		 *
+		 * @param index entry index
+		 * @return new stream of the uncompressed entry content
+		 * @throws IOException
+		 */
+		InputStream open(int index) throws IOException;
+	}
+
+	/**
+	 * Write a ZIP archive of uncompressed (STORED) entries.
+	 *
+	 * The entry sizes are known up front, so the whole layout is computed first
+	 * and the file is pre-sized. The entries are then read (largest first) by
+	 * a pool of worker threads, each one writes the data and the local header
+	 * at the precomputed offset, the central directory is written last. Entries
+	 * and archives past 4 GB get the ZIP64 extra fields and end records.
+	 *
+	 * @param outZip
+	 * @param names    entry names, directories end with '/'
+	 * @param sizes    uncompressed entry sizes
+	 * @param dosTimes last modified times in MS-DOS format
+	 * @param source   entry content
+	 * @param threads  number of worker threads
+	 * @throws IOException
+	 */
+	public static void writeStored(Path outZip, String[] names, long[] sizes, long[] dosTimes, EntrySource source, int threads) throws IOException {
+		int      count     = names.length;
+		byte[][] nameBytes = new byte[count][];
+		long[]   offsets   = new long[count];
+		int[]    dataStart = new int[count]; // local header size
+		long[]   crcs      = new long[count];
+		long     position  = 0;
+		long     cdSize    = 0;
+		for (int i = 0; i < count; i++) {
+			nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+			offsets[i]   = position;
+			dataStart[i] = LOCAL_HEADER_SIZE + nameBytes[i].length + (sizes[i] >= ZIP32_MAX ? ZIP64_LOCAL_EXTRA_SIZE : 0);
+			position    += dataStart[i] + sizes[i];
+			cdSize      += CENTRAL_HEADER_SIZE + nameBytes[i].length + getZip64ExtraSize(sizes[i], sizes[i], offsets[i]);
+		}
+		long cdOffset = position;
+		long endSize  = END_HEADER_SIZE + (isZip64End(count, cdSize, cdOffset) ? ZIP64_END_SIZE : 0);
+		if (cdSize + endSize > Integer.MAX_VALUE)
+			throw new IOException("ZIP archive has too many entries: " + outZip); // central directory is built in one buffer
+
+		try (FileChannel channel = FileChannel.open(outZip, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(1), cdOffset + cdSize + endSize - 1); // pre-size
+
+			/* entries, largest first */
+			Integer[]                  order   = new Integer[count];
+			AtomicInteger              next    = new AtomicInteger();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Arrays.setAll(order, i -> i);
+			Arrays.sort(order, Comparator.comparingLong((Integer i) -> sizes[i]).reversed());
+			int          workers = Math.max(1, Math.min(threads, count));
+			ForkJoinPool pool    = new ForkJoinPool(workers);
+			for (int w = 0; w < workers; w++)
+				pool.execute(() -> {
+					byte[]     buffer = new byte[COPY_BUFFER_SIZE];
+					ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + 0xFFFF + ZIP64_LOCAL_EXTRA_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+					for (int j; failure.get() == null && (j = next.getAndIncrement()) < count;) {
+						int i = order[j];
+						try {
+							crcs[i] = writeStoredData(channel, source, i, names[i], offsets[i] + dataStart[i], sizes[i], buffer);
+							header.clear();
+							putLocalHeader(header, VERSION_20, getFlags(nameBytes[i], names[i]), ZipEntry.STORED, dosTimes[i], crcs[i], sizes[i], sizes[i], nameBytes[i], NO_EXTRA);
+							writeFully(channel, header.flip(), offsets[i]);
+						} catch (Throwable e) {
+							failure.compareAndSet(null, e);
 						}
 					}
-				}
+				});
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while writing " + outZip);
+			}
+			Throwable e = failure.get();
+			if (e instanceof IOException)
+				throw (IOException) e;
+			if (e != null)
+				throw new IOException(e);
+
+			/* central directory */
+			ByteBuffer central = ByteBuffer.allocate((int) (cdSize + endSize)).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < count; i++)
+				putCentralHeader(central, VERSION_20, getFlags(nameBytes[i], names[i]), ZipEntry.STORED, dosTimes[i], crcs[i], sizes[i], sizes[i], offsets[i], nameBytes[i], NO_EXTRA);
+			putEnd(central, count, cdSize, cdOffset, cdOffset + cdSize);
+			writeFully(channel, central.flip(), cdOffset);
+		}
+	}
+
+	private static long writeStoredData(FileChannel channel, EntrySource source, int index, String name, long position, long size, byte[] buffer) throws IOException {
+		CRC32 crc     = new CRC32();
+		long  written = 0;
+		try (InputStream is = source.open(index)) {
+			for (int n; (n = is.read(buffer)) != -1;) {
+				if (written + n > size)
+					break;
+				crc.update(buffer, 0, n);
+				writeFully(channel, ByteBuffer.wrap(buffer, 0, n), position + written);
+				written += n;
 			}
 		}
+		if (written != size)
+			throw new IOException("Unexpected size of ZIP entry: " + name);
+		return crc.getValue();
+	}
+
+	/**
+	 * @return general purpose flags of an entry written by
+	 *         {@link #writeStored}
+	 */
+	private static int getFlags(byte[] nameBytes, String name) {
+		return nameBytes.length != name.length() ? FLAG_UTF8 : 0;
+	}
+
+	/**
+	 * Put the local header, the sizes go to a ZIP64 extra field (before the
+	 * other extra fields) if either one doesn't fit, both of them then, as
+	 * required for the local header
+	 *
+	 * @return true if the ZIP64 extra field was written
+	 */
+	private static boolean putLocalHeader(ByteBuffer header, int version, int flags, int method, long dosTime, long crc, long compressedSize, long size, byte[] name, ByteBuffer extra) {
+		boolean zip64 = compressedSize >= ZIP32_MAX || size >= ZIP32_MAX;
+		header.putInt(LOCAL_HEADER_SIG).putShort((short) (zip64 ? Math.max(version, VERSION_45) : version)).putShort((short) flags).putShort((short) method);
+		header.putInt((int) dosTime).putInt((int) crc).putInt(zip64 ? ZIP64_MAGIC_VALUE : (int) compressedSize).putInt(zip64 ? ZIP64_MAGIC_VALUE : (int) size);
+		header.putShort((short) name.length).putShort((short) (extra.remaining() + (zip64 ? ZIP64_LOCAL_EXTRA_SIZE : 0))).put(name);
+		if (zip64)
+			header.putShort((short) ZIP64_EXTRA_ID).putShort((short) (ZIP64_LOCAL_EXTRA_SIZE - 4)).putLong(size).putLong(compressedSize);
+		header.put(extra.duplicate());
+		return zip64;
+	}
+
+	/**
+	 * Put the central directory record, the sizes and the offset that don't
+	 * fit go to a ZIP64 extra field (before the other extra fields)
+	 */
+	private static void putCentralHeader(ByteBuffer central, int version, int flags, int method, long dosTime, long crc, long compressedSize, long size, long offset, byte[] name, ByteBuffer extra) {
+		int zip64Size = getZip64ExtraSize(compressedSize, size, offset);
+		if (zip64Size != 0)
+			version = Math.max(version, VERSION_45);
+		central.putInt(CENTRAL_HEADER_SIG).putShort((short) version).putShort((short) version).putShort((short) flags).putShort((short) method);
+		central.putInt((int) dosTime).putInt((int) crc).putInt(compressedSize >= ZIP32_MAX ? ZIP64_MAGIC_VALUE : (int) compressedSize).putInt(size >= ZIP32_MAX ? ZIP64_MAGIC_VALUE : (int) size);
+		central.putShort((short) name.length).putShort((short) (extra.remaining() + zip64Size)).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+		central.putInt(0).putInt(offset >= ZIP32_MAX ? ZIP64_MAGIC_VALUE : (int) offset).put(name);
+		if (zip64Size != 0) {
+			central.putShort((short) ZIP64_EXTRA_ID).putShort((short) (zip64Size - 4));
+			if (size >= ZIP32_MAX)
+				central.putLong(size);
+			if (compressedSize >= ZIP32_MAX)
+				central.putLong(compressedSize);
+			if (offset >= ZIP32_MAX)
+				central.putLong(offset);
+		}
+		central.put(extra.duplicate());
+	}
+
+	/**
+	 * @return size of the ZIP64 extra field of the central directory record, 0
+	 *         if not needed
+	 */
+	private static int getZip64ExtraSize(long compressedSize, long size, long offset) {
+		int result = (size >= ZIP32_MAX ? 8 : 0) + (compressedSize >= ZIP32_MAX ? 8 : 0) + (offset >= ZIP32_MAX ? 8 : 0);
+		return result == 0 ? 0 : 4 + result;
+	}
+
+	/**
+	 * @return true if the end of central directory needs the ZIP64 records
+	 */
+	private static boolean isZip64End(int count, long cdSize, long cdOffset) {
+		return count >= ZIP64_MAGIC_COUNT || cdSize >= ZIP32_MAX || cdOffset >= ZIP32_MAX;
+	}
+
+	/**
+	 * Put the end of central directory record (and the ZIP64 records for more
+	 * than 65535 entries or a central directory past 4 GB)
+	 */
+	private static void putEnd(ByteBuffer header, int count, long cdSize, long cdOffset, long position) {
+		if (isZip64End(count, cdSize, cdOffset)) {
+			header.putInt(ZIP64_END_HEADER_SIG).putLong(44).putShort(VERSION_45).putShort(VERSION_45).putInt(0).putInt(0);
+			header.putLong(count).putLong(count).putLong(cdSize).putLong(cdOffset);
+			header.putInt(ZIP64_LOCATOR_SIG).putInt(0).putLong(position).putInt(1);
+		}
+		header.putInt(END_HEADER_SIG).putShort((short) 0).putShort((short) 0);
+		header.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT)).putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+		header.putInt(cdSize >= ZIP32_MAX ? ZIP64_MAGIC_VALUE : (int) cdSize).putInt(cdOffset >= ZIP32_MAX ? ZIP64_MAGIC_VALUE : (int) cdOffset).putShort((short) 0);
+	}
+
+	/**
+	 * Remove the ZIP64 extended information from the extra field: sizes and
+	 * offsets of the copy are written to the headers directly
+	 */
+	private static ByteBuffer stripZip64Extra(ByteBuffer extra) {
+		extra.order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer result = ByteBuffer.allocate(extra.remaining());
+		while (extra.remaining() >= 4) {
+			int id  = extra.getShort(extra.position()) & 0xFFFF;
+			int len = Math.min(4 + (extra.getShort(extra.position() + 2) & 0xFFFF), extra.remaining());
+			if (id != ZIP64_EXTRA_ID)
+				result.put(extra.duplicate().limit(extra.position() + len));
+			extra.position(extra.position() + len);
+		}
+		return result.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
 	}
-}
\ No newline at end of file
+}
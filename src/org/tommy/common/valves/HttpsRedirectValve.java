@@ -0,0 +1,105 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.valves;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+/**
+ * Valve that redirects the plain HTTP requests to HTTPS ("--redirect") before
+ * they reach the host and the context: 301 for GET and HEAD, 308 (method and
+ * body kept) otherwise. The HTTPS responses get the "Strict-Transport-Security"
+ * header ("--hsts").
+ *
+ * The "https://host:port" part of the location is rendered once per host name
+ * (up to {@link #MAX_HOSTS} of them, the Host header is up to the client).
+ */
+public class HttpsRedirectValve extends ValveBase {
+
+	/**
+	 * Maximum number of host names with a cached location prefix
+	 */
+	public static final int MAX_HOSTS = 256;
+
+	private static final String HSTS_HEADER = "Strict-Transport-Security";
+
+	private final int                 sslPort;
+	private final String              hsts;
+	private final Map<String, String> locationPrefixes = new ConcurrentHashMap<>();
+
+	/**
+	 *
+	 * @param sslPort    HTTPS port
+	 * @param hstsMaxAge max-age of the "Strict-Transport-Security" header in
+	 *                   seconds, 0 for no header
+	 */
+	public HttpsRedirectValve(int sslPort, int hstsMaxAge) {
+		super(true);
+		this.sslPort = sslPort;
+		this.hsts    = hstsMaxAge > 0 ? "max-age=" + hstsMaxAge : null;
+	}
+
+	@Override
+	public void invoke(Request request, Response response) throws IOException, ServletException {
+		if (request.isSecure()) {
+			if (hsts != null)
+				response.setHeader(HSTS_HEADER, hsts);
+			getNext().invoke(request, response);
+			return;
+		}
+
+		StringBuilder location = new StringBuilder(getLocationPrefix(request.getServerName())).append(request.getRequestURI());
+		String        query    = request.getQueryString();
+		if (query != null)
+			location.append('?').append(query);
+
+		String method = request.getMethod();
+		response.setStatus("GET".equals(method) || "HEAD".equals(method) ? HttpServletResponse.SC_MOVED_PERMANENTLY : 308);
+		response.setHeader("Location", location.toString());
+		response.setContentLength(0);
+	}
+
+	private String getLocationPrefix(String host) {
+		String prefix = locationPrefixes.get(host);
+		if (prefix == null) {
+			prefix = "https://" + host + (sslPort == 443 ? "" : ":" + sslPort);
+			if (locationPrefixes.size() < MAX_HOSTS)
+				locationPrefixes.put(host, prefix);
+		}
+		return prefix;
+	}
+}
@@ -0,0 +1 @@
+package org.tommy.common.valves;
\ No newline at end of file
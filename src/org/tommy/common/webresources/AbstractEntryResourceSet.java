@@ -0,0 +1,255 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.webresources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.webresources.AbstractArchiveResourceSet;
+import org.tommy.common.loader.LibCache;
+
+/**
+ * Read-only resource set over the entries of an archive that Tomcat can't
+ * open as a JAR file (nested or encrypted one). Subclasses register the
+ * entries in {@link #initInternal()} and provide their content.
+ *
+ * Resource URLs use the "app:/path" form and carry their own stream handler
+ * (not "jar:", Tomcat expects a JarURLConnection for those). The JARs from
+ * "WEB-INF/lib" are extracted (into the {@link LibCache}, or where the
+ * subclass puts them) the first time their URL is asked for (by the class
+ * loader and the JAR scanner), so Tomcat handles them as ordinary JAR files. Directory entries missing in the
+ * archive are synthesized.
+ */
+public abstract class AbstractEntryResourceSet extends AbstractArchiveResourceSet {
+
+	private static final String WEB_INF_LIB = "WEB-INF/lib/";
+	private static final String JAR_EXT     = ".jar";
+
+	private final Path                  libCache;
+	private final URLStreamHandler      handler    = new EntryURLStreamHandler();
+	private final Map<String, JarEntry> jarEntries = new HashMap<>();
+	private final Map<String, URL>      libUrls    = new ConcurrentHashMap<>();
+
+	/**
+	 *
+	 * @param root
+	 * @param webAppMount
+	 * @param base        file system path of the archive (or of its outer archive)
+	 * @param baseUrl     base URL of the entries, e.g. "app:/"
+	 * @param libCache    directory for the extracted "WEB-INF/lib" JARs, passed
+	 *                    to {@link #extractJar}
+	 */
+	protected AbstractEntryResourceSet(WebResourceRoot root, String webAppMount, String base, String baseUrl, Path libCache) {
+		this.libCache = libCache;
+		setRoot(root);
+		setWebAppMount(webAppMount);
+		setBase(base);
+		setInternalPath("/");
+		try {
+			setBaseUrl(new URL(null, baseUrl, handler));
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Register archive entry (and its missing parent directories)
+	 *
+	 * @param name
+	 * @param time           last modification time (milliseconds since the epoch)
+	 * @param size
+	 * @param compressedSize
+	 * @param crc
+	 * @return false if the entry is already registered
+	 */
+	protected boolean addEntry(String name, long time, long size, long compressedSize, long crc) {
+		JarEntry existing = jarEntries.get(name);
+		if (existing != null && existing.getSize() != -1)
+			return false;
+		JarEntry jarEntry = new JarEntry(name);
+		jarEntry.setTime(time);
+		jarEntry.setSize(size);
+		jarEntry.setCompressedSize(compressedSize);
+		jarEntry.setCrc(crc);
+		jarEntries.put(name, jarEntry);
+
+		/* parent directories */
+		for (int pos = name.lastIndexOf('/', name.length() - 2); pos > 0; pos = name.lastIndexOf('/', pos - 1)) {
+			String dir = name.substring(0, pos + 1);
+			if (jarEntries.containsKey(dir))
+				break;
+			JarEntry dirEntry = new JarEntry(dir);
+			dirEntry.setTime(time);
+			jarEntries.put(dir, dirEntry);
+		}
+		return true;
+	}
+
+	/**
+	 * Read the manifest, if the archive has one (call after the entries are
+	 * registered)
+	 *
+	 * @throws LifecycleException
+	 */
+	protected void loadManifest() throws LifecycleException {
+		if (!jarEntries.containsKey(JarFile.MANIFEST_NAME))
+			return;
+		try (InputStream is = getInputStream(JarFile.MANIFEST_NAME)) {
+			setManifest(new Manifest(is));
+		} catch (IOException e) {
+			throw new LifecycleException(e);
+		}
+	}
+
+	/**
+	 * Get entry content
+	 *
+	 * @param name entry name
+	 * @return stream
+	 * @throws IOException
+	 */
+	protected abstract InputStream getInputStream(String name) throws IOException;
+
+	/**
+	 * Extract the "WEB-INF/lib" JAR, e.g. into the library cache
+	 *
+	 * @param name     entry name
+	 * @param libCache cache directory (see the constructor)
+	 * @return path of the extracted JAR
+	 * @throws IOException
+	 */
+	protected abstract Path extractJar(String name, Path libCache) throws IOException;
+
+	@Override
+	protected Map<String, JarEntry> getArchiveEntries(boolean single) {
+		return jarEntries;
+	}
+
+	@Override
+	protected JarEntry getArchiveEntry(String pathInArchive) {
+		return jarEntries.get(pathInArchive);
+	}
+
+	@Override
+	protected boolean isMultiRelease() {
+		return false;
+	}
+
+	@Override
+	protected WebResource createArchiveResource(JarEntry jarEntry, String webAppPath, Manifest manifest) {
+		return new ZipResource(this, webAppPath, getBaseUrlString(), jarEntry);
+	}
+
+	/**
+	 * Get entry URL
+	 *
+	 * @param name entry name
+	 * @return URL, "file:" URL of the extracted JAR for "WEB-INF/lib" JARs
+	 * @throws IOException
+	 */
+	URL getURL(String name) throws IOException {
+		if (name.startsWith(WEB_INF_LIB) && name.endsWith(JAR_EXT) && name.indexOf('/', WEB_INF_LIB.length()) == -1) {
+			URL url = libUrls.get(name);
+			if (url == null) {
+				url = extractJar(name, libCache).toUri().toURL();
+				libUrls.put(name, url);
+			}
+			return url;
+		}
+		return new URL(null, getBaseUrlString() + name, handler);
+	}
+
+	/**
+	 * Opens the entry URLs of this set
+	 */
+	private final class EntryURLStreamHandler extends URLStreamHandler {
+
+		@Override
+		protected void parseURL(URL url, String spec, int start, int limit) {
+			setURL(url, url.getProtocol(), "", -1, null, null, spec.substring(start, limit), null, null);
+		}
+
+		@Override
+		protected URLConnection openConnection(URL url) throws IOException {
+			String spec    = url.toString();
+			String baseUrl = getBaseUrlString();
+			if (!spec.startsWith(baseUrl))
+				throw new IOException("Resource is not found: " + url);
+			String   name     = spec.substring(baseUrl.length());
+			JarEntry jarEntry = jarEntries.get(name);
+			if (jarEntry == null || jarEntry.isDirectory())
+				throw new IOException("Resource is not found: " + url);
+			return new EntryURLConnection(url, jarEntry);
+		}
+	}
+
+	private final class EntryURLConnection extends URLConnection {
+
+		private final JarEntry jarEntry;
+
+		EntryURLConnection(URL url, JarEntry jarEntry) {
+			super(url);
+			this.jarEntry = jarEntry;
+		}
+
+		@Override
+		public void connect() {
+			connected = true;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			connect();
+			return AbstractEntryResourceSet.this.getInputStream(jarEntry.getName());
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return jarEntry.getSize();
+		}
+
+		@Override
+		public long getLastModified() {
+			return jarEntry.getTime();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.webresources;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.Wrapper;
+import org.tommy.common.utils.CacheUtils;
+import org.tommy.common.utils.CommonUtils;
+
+/**
+ * Hot sync of the "--app" directory into the running context.
+ *
+ * The directory tree is watched with a {@link WatchService}. Changed files are
+ * copied to the "docBase" (if the app is served from a copy) and the context
+ * is reloaded only when "WEB-INF/classes", "WEB-INF/lib" or "WEB-INF/web.xml"
+ * change. The Tomcat resource cache is disabled for the watched context, so
+ * other files are served fresh, and JSP files are checked for modification on
+ * every request.
+ */
+public class AppDirWatcher implements Runnable {
+
+	private static final long     DEBOUNCE_MS  = 50;
+	private static final String[] RELOAD_PATHS = { "/WEB-INF/classes/", "/WEB-INF/lib/", "/WEB-INF/web.xml" };
+
+	private final Path                sourceDir;
+	private final Path                docBase;
+	private final Context             ctx;
+	private final Logger              logger;
+	private final WatchService        watchService;
+	private final Map<WatchKey, Path> dirs = new ConcurrentHashMap<>();
+
+	private AppDirWatcher(Path sourceDir, Path docBase, Context ctx, Logger logger) throws IOException {
+		this.sourceDir    = sourceDir;
+		this.docBase      = docBase;
+		this.ctx          = ctx;
+		this.logger       = logger;
+		this.watchService = FileSystems.getDefault().newWatchService();
+	}
+
+	/**
+	 * Start watching the app directory (call before the context starts)
+	 *
+	 * @param sourceDir app directory
+	 * @param docBase   directory the app is served from: the app directory itself or its copy
+	 * @param ctx
+	 * @param logger
+	 * @throws IOException
+	 */
+	public static void watch(Path sourceDir, Path docBase, Context ctx, Logger logger) throws IOException {
+		AppDirWatcher watcher = new AppDirWatcher(sourceDir.toAbsolutePath(), docBase.toAbsolutePath(), ctx, logger);
+		watcher.registerTree(watcher.sourceDir);
+
+		/* resources are created and JSP servlet is configured from web.xml on start, changed files are read from disk on the next request */
+		ctx.addLifecycleListener(event -> {
+			if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+				ctx.getResources().setCachingAllowed(false);
+				Wrapper jsp = (Wrapper) ctx.findChild("jsp");
+				if (jsp != null)
+					jsp.addInitParameter("modificationTestInterval", "0");
+			}
+		});
+
+		Thread thread = new Thread(watcher, "tommy-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				Set<String> changed = new TreeSet<>();
+				WatchKey    key     = watchService.take();
+				do { // collect the burst of events
+					poll(key, changed);
+				} while ((key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null);
+				try {
+					sync(changed);
+				} catch (Throwable e) {
+					logger.log(Level.WARNING, "Unable to sync app changes: " + changed, e);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private void poll(WatchKey key, Set<String> changed) {
+		Path dir = dirs.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed.add(""); // whole tree
+				continue;
+			}
+			Path path = dir.resolve((Path) event.context());
+			changed.add(sourceDir.relativize(path).toString().replace('\\', '/'));
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+				try {
+					registerTree(path);
+				} catch (IOException e) {
+					logger.log(Level.WARNING, "Unable to watch directory: " + path, e);
+				}
+		}
+		if (!key.reset())
+			dirs.remove(key);
+	}
+
+	private void sync(Set<String> changed) throws IOException {
+		boolean reload = false;
+		for (String relPath : changed) {
+			if (!sourceDir.equals(docBase))
+				copy(sourceDir.resolve(relPath), docBase.resolve(relPath));
+			String path = '/' + relPath;
+			for (String reloadPath : RELOAD_PATHS)
+				reload |= relPath.isEmpty() || path.startsWith(reloadPath) || reloadPath.equals(path + '/');
+		}
+		if (!ctx.getState().isAvailable())
+			return;
+		if (reload) {
+			logger.log(Level.INFO, "App classes changed, reloading context.");
+			ctx.reload();
+		} else
+			logger.log(Level.FINE, "App files changed: " + changed);
+	}
+
+	/**
+	 * Mirror the source file or directory to the target
+	 */
+	private static void copy(Path source, Path target) throws IOException {
+		if (Files.isDirectory(source)) {
+			if (Files.isRegularFile(target))
+				Files.delete(target);
+			CommonUtils.copyDir(source, target);
+		} else if (Files.isRegularFile(source)) {
+			Files.createDirectories(target.getParent());
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		} else
+			CacheUtils.deleteTree(target);
+	}
+
+	private void registerTree(Path dir) throws IOException {
+		try (Stream<Path> stream = Files.walk(dir)) {
+			for (Iterator<Path> it = stream.filter(Files::isDirectory).iterator(); it.hasNext();) {
+				Path subDir = it.next();
+				dirs.put(subDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), subDir);
+			}
+		}
+	}
+}
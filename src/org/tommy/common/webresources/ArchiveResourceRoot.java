@@ -0,0 +1,68 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.webresources;
+
+import java.util.function.Function;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceSet;
+import org.apache.catalina.webresources.StandardRoot;
+
+/**
+ * Web app resources with an archive resource set (e.g. {@link ZipResourceSet})
+ * as the main resource set, instead of the context "docBase" (subclasses may
+ * keep the "docBase" one, see {@link PreloadedResourceRoot})
+ */
+public class ArchiveResourceRoot extends StandardRoot {
+
+	private final Function<WebResourceRoot, WebResourceSet> mainResourceSetFactory;
+
+	/**
+	 *
+	 * @param context
+	 * @param mainResourceSetFactory creates the main resource set for this root, null for the "docBase" one
+	 */
+	public ArchiveResourceRoot(Context context, Function<WebResourceRoot, WebResourceSet> mainResourceSetFactory) {
+		super(context);
+		this.mainResourceSetFactory = mainResourceSetFactory;
+	}
+
+	@Override
+	protected WebResourceSet createMainResourceSet() {
+		return mainResourceSetFactory == null ? super.createMainResourceSet() : mainResourceSetFactory.apply(this);
+	}
+
+	/**
+	 * The archive can't change: cached resources are not revalidated
+	 */
+	@Override
+	protected boolean isPackedWarFile() {
+		return mainResourceSetFactory != null || super.isPackedWarFile();
+	}
+}
@@ -0,0 +1,165 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.webresources;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.util.jar.Manifest;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.webresources.AbstractResource;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.tommy.common.utils.ByteBufferInputStream;
+import org.tommy.common.utils.MappedBlob;
+
+/**
+ * File of the {@link PreloadedResourceRoot}, content is streamed from the
+ * mapped blob, not copied to the heap
+ */
+public class BlobResource extends AbstractResource {
+
+	private static final Log log = LogFactory.getLog(BlobResource.class);
+
+	private final PreloadedResourceRoot root;
+	private final MappedBlob            blob;
+	private final MappedBlob.Entry      entry;
+	private WebResource                 source;
+
+	BlobResource(PreloadedResourceRoot root, String webAppPath, MappedBlob blob, MappedBlob.Entry entry) {
+		super(root, webAppPath);
+		this.root  = root;
+		this.blob  = blob;
+		this.entry = entry;
+	}
+
+	@Override
+	public long getLastModified() {
+		return entry.getLastModified();
+	}
+
+	@Override
+	public boolean exists() {
+		return true;
+	}
+
+	@Override
+	public boolean isVirtual() {
+		return false;
+	}
+
+	@Override
+	public boolean isDirectory() {
+		return false;
+	}
+
+	@Override
+	public boolean isFile() {
+		return true;
+	}
+
+	@Override
+	public boolean delete() {
+		return false;
+	}
+
+	@Override
+	public String getName() {
+		String path = getWebappPath();
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	@Override
+	public long getContentLength() {
+		return entry.getSize();
+	}
+
+	/**
+	 * No file to send with sendfile
+	 */
+	@Override
+	public String getCanonicalPath() {
+		return null;
+	}
+
+	@Override
+	public boolean canRead() {
+		return true;
+	}
+
+	/**
+	 * Not copied to the heap, use the stream
+	 */
+	@Override
+	public byte[] getContent() {
+		return null;
+	}
+
+	@Override
+	public long getCreation() {
+		return entry.getLastModified();
+	}
+
+	@Override
+	public URL getURL() {
+		return getSource().getURL();
+	}
+
+	@Override
+	public URL getCodeBase() {
+		return getSource().getCodeBase();
+	}
+
+	@Override
+	public Certificate[] getCertificates() {
+		return null;
+	}
+
+	@Override
+	public Manifest getManifest() {
+		return null;
+	}
+
+	@Override
+	protected InputStream doGetInputStream() {
+		return new ByteBufferInputStream(blob.getData(entry));
+	}
+
+	@Override
+	protected Log getLog() {
+		return log;
+	}
+
+	private WebResource getSource() {
+		if (source == null)
+			source = root.getSourceResource(getWebappPath());
+		return source;
+	}
+}
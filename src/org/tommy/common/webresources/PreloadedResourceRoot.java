@@ -0,0 +1,188 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.webresources;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceSet;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.tommy.common.utils.AppCache;
+import org.tommy.common.utils.CacheUtils;
+import org.tommy.common.utils.MappedBlob;
+
+/**
+ * Web app resources with the static files preloaded into physical memory:
+ * they are served from a memory-mapped {@link MappedBlob}, off heap and
+ * bypassing the (on-heap, size and TTL limited) resource cache.
+ *
+ * The blob is written on start to "&lt;cache&gt;/&lt;key&gt;.blob", the key
+ * is a digest of the paths, sizes and last modified times of the files, so a
+ * later start of the same app, or another JVM serving it, maps the same file
+ * and shares its pages. "WEB-INF", "META-INF" and the JSP sources are not
+ * preloaded, neither are the resources added after start.
+ */
+public class PreloadedResourceRoot extends ArchiveResourceRoot {
+
+	/**
+	 * Name of the cache directory in the temp or app cache directory
+	 */
+	public static final String CACHE_DIR = "tommy-preload";
+
+	private static final Log log = LogFactory.getLog(PreloadedResourceRoot.class);
+
+	private static final String   BLOB_EXT  = ".blob";
+	private static final String[] SKIP_DIRS = { "/WEB-INF/", "/META-INF/" };
+	private static final String[] SKIP_EXTS = { ".jsp", ".jspx", ".jspf", ".tag", ".tagx" };
+
+	private final Path          cacheDir;
+	private volatile MappedBlob blob;
+
+	/**
+	 *
+	 * @param context
+	 * @param mainResourceSetFactory creates the main resource set for this root, null for the "docBase" one
+	 * @param cacheDir
+	 */
+	public PreloadedResourceRoot(Context context, Function<WebResourceRoot, WebResourceSet> mainResourceSetFactory, Path cacheDir) {
+		super(context, mainResourceSetFactory);
+		this.cacheDir = cacheDir;
+	}
+
+	@Override
+	protected void startInternal() throws LifecycleException {
+		super.startInternal();
+		try {
+			long start = System.nanoTime();
+			blob = preload();
+			log.info("Resources preloaded: " + blob.size() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+		} catch (IOException e) {
+			log.warn("Unable to preload resources", e);
+		}
+	}
+
+	@Override
+	protected void stopInternal() throws LifecycleException {
+		blob = null;
+		super.stopInternal();
+	}
+
+	/**
+	 * Preloaded files are served from the blob, the rest as usual (paths that
+	 * aren't normalized miss the blob and are validated by the superclass)
+	 */
+	@Override
+	protected WebResource getResource(String path, boolean validate, boolean useClassLoaderResources) {
+		MappedBlob blob = this.blob;
+		if (blob != null && !useClassLoaderResources) {
+			MappedBlob.Entry entry = blob.getEntry(path);
+			if (entry != null)
+				return new BlobResource(this, path, blob, entry);
+		}
+		return super.getResource(path, validate, useClassLoaderResources);
+	}
+
+	/**
+	 * Resource as served without the blob (for the URL, etc.)
+	 *
+	 * @param path
+	 * @return
+	 */
+	WebResource getSourceResource(String path) {
+		return getResourceInternal(path, false);
+	}
+
+	private MappedBlob preload() throws IOException {
+		List<String> paths = new ArrayList<>();
+		listFiles("/", paths);
+		paths.sort(null);
+
+		AppCache.Key           key     = new AppCache.Key();
+		List<MappedBlob.Entry> entries = new ArrayList<>();
+		for (String path : paths) {
+			WebResource resource = getSourceResource(path);
+			long        size     = resource.getContentLength();
+			if (size < 0 || size > MappedBlob.SEGMENT_SIZE)
+				continue;
+			key.add(path).add(size).add(resource.getLastModified());
+			entries.add(new MappedBlob.Entry(path, size, resource.getLastModified()));
+		}
+
+		Path blobPath = cacheDir.resolve(key + BLOB_EXT);
+		if (!Files.isRegularFile(blobPath)) {
+			Path tmp = CacheUtils.createTempFile(cacheDir, BLOB_EXT);
+			try {
+				MappedBlob.write(tmp, entries, name -> getSourceResource(name).getInputStream());
+				CacheUtils.publish(tmp, blobPath);
+			} finally {
+				CacheUtils.discard(tmp);
+			}
+		}
+
+		MappedBlob blob = MappedBlob.open(blobPath);
+		blob.load();
+		return blob;
+	}
+
+	private void listFiles(String dir, List<String> result) {
+		Set<String> paths = listWebAppPaths(dir);
+		if (paths == null)
+			return;
+		for (String path : paths)
+			if (path.endsWith("/")) {
+				if (!startsWith(path, SKIP_DIRS))
+					listFiles(path, result);
+			} else if (!endsWith(path, SKIP_EXTS))
+				result.add(path);
+	}
+
+	private static boolean startsWith(String path, String[] prefixes) {
+		for (String prefix : prefixes)
+			if (path.startsWith(prefix))
+				return true;
+		return false;
+	}
+
+	private static boolean endsWith(String path, String[] exts) {
+		for (String ext : exts)
+			if (path.endsWith(ext))
+				return true;
+		return false;
+	}
+}
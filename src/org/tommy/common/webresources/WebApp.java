@@ -0,0 +1,133 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.webresources;
+
+import java.nio.file.Path;
+import java.util.function.Function;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceSet;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Web app to deploy: a "docBase" (WAR file or directory) served by Tomcat,
+ * or an archive served in place by an {@link ArchiveResourceRoot}
+ */
+public class WebApp {
+
+	private final Path                                      docBase;
+	private final Function<WebResourceRoot, WebResourceSet> mainResourceSetFactory;
+	private final boolean                                   encrypted;
+
+	/**
+	 * Web app served by Tomcat from the WAR file or directory
+	 *
+	 * @param docBase
+	 */
+	public WebApp(Path docBase) {
+		this(docBase, null);
+	}
+
+	/**
+	 * Web app served in place from an archive
+	 *
+	 * @param docBase                empty directory
+	 * @param mainResourceSetFactory creates the archive resource set
+	 */
+	public WebApp(Path docBase, Function<WebResourceRoot, WebResourceSet> mainResourceSetFactory) {
+		this(docBase, mainResourceSetFactory, false);
+	}
+
+	/**
+	 * Web app served in place from an archive
+	 *
+	 * @param docBase                empty directory
+	 * @param mainResourceSetFactory creates the archive resource set
+	 * @param encrypted              the archive is password-protected
+	 */
+	public WebApp(Path docBase, Function<WebResourceRoot, WebResourceSet> mainResourceSetFactory, boolean encrypted) {
+		this.docBase                = docBase;
+		this.mainResourceSetFactory = mainResourceSetFactory;
+		this.encrypted              = encrypted;
+	}
+
+	public Path getDocBase() {
+		return docBase;
+	}
+
+	/**
+	 * @return true if served from a password-protected archive: its content
+	 *         must not be written to the persistent caches in plain text
+	 */
+	public boolean isEncrypted() {
+		return encrypted;
+	}
+
+	/**
+	 * Add the web app to Tomcat
+	 *
+	 * @param tomcat
+	 * @param contextPath
+	 * @return context
+	 */
+	public Context addTo(Tomcat tomcat, String contextPath) {
+		return addTo(tomcat, contextPath, null);
+	}
+
+	/**
+	 * Add the web app to Tomcat
+	 *
+	 * @param tomcat
+	 * @param contextPath
+	 * @param config      context configuration, null for the host default
+	 * @return context
+	 */
+	public Context addTo(Tomcat tomcat, String contextPath, LifecycleListener config) {
+		return addTo(tomcat, contextPath, config, null);
+	}
+
+	/**
+	 * Add the web app to Tomcat
+	 *
+	 * @param tomcat
+	 * @param contextPath
+	 * @param config       context configuration, null for the host default
+	 * @param preloadCache directory of the preloaded static files (see {@link PreloadedResourceRoot}), null to serve them as usual
+	 * @return context
+	 */
+	public Context addTo(Tomcat tomcat, String contextPath, LifecycleListener config, Path preloadCache) {
+		Context ctx = config == null ? tomcat.addWebapp(contextPath, docBase.toString()) : tomcat.addWebapp(tomcat.getHost(), contextPath, docBase.toString(), config);
+		if (preloadCache != null)
+			ctx.setResources(new PreloadedResourceRoot(ctx, mainResourceSetFactory, preloadCache));
+		else if (mainResourceSetFactory != null)
+			ctx.setResources(new ArchiveResourceRoot(ctx, mainResourceSetFactory));
+		return ctx;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.webresources;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResourceRoot;
+import org.tommy.common.utils.CacheUtils;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.FileHeader;
+
+/**
+ * Read-only resource set over a password-protected ZIP archive: entries are
+ * decrypted (and inflated) by Zip4j on demand, when Tomcat asks for them,
+ * nothing is decrypted up front and no plain text is written to disk (but
+ * the "WEB-INF/lib" JARs, Tomcat opens them as files).
+ *
+ * The "WEB-INF/lib" JARs are not put into the shared library cache, they are
+ * extracted to an owner-only temp directory of this process, deleted when
+ * the set is destroyed or the JVM exits (left behind if the process is
+ * killed).
+ *
+ * The central directory is read once; every entry stream then reads the
+ * archive through its own file channel, positioned at the local header of the
+ * entry, so concurrent requests share no Zip4j state (zip4j ZipFile is not
+ * thread-safe and keeps every stream it has opened until it is closed).
+ *
+ * Decrypted entries can be kept in a bounded LRU cache; an entry is cached if
+ * it takes no more than 1/8 of the cache size.
+ */
+public class Zip4jResourceSet extends AbstractEntryResourceSet {
+
+	private static final String TMP_DIR_PREFIX = "tommy-decrypted-";
+
+	private final Path                    zipPath;
+	private final char[]                  password;
+	private final long                    cacheSize;
+	private final Map<String, FileHeader> fileHeaders = new LinkedHashMap<>();
+	private final Map<String, byte[]>     cache       = new LinkedHashMap<>(16, 0.75f, true);
+	private long                          cached;
+	private Path                          libDir;     // decrypted "WEB-INF/lib" JARs
+
+	/**
+	 *
+	 * @param root
+	 * @param webAppMount
+	 * @param zipPath     encrypted archive
+	 * @param password
+	 * @param baseUrl     base URL of the entries, e.g. "app:/"
+	 * @param cacheSize   size of the decrypted entry cache in bytes, 0 - no cache
+	 */
+	public Zip4jResourceSet(WebResourceRoot root, String webAppMount, Path zipPath, char[] password, String baseUrl, long cacheSize) {
+		super(root, webAppMount, zipPath.toString(), baseUrl, null);
+		this.zipPath   = zipPath;
+		this.password  = password;
+		this.cacheSize = cacheSize;
+		addLifecycleListener(event -> { // destroyInternal() is final
+			if (Lifecycle.AFTER_DESTROY_EVENT.equals(event.getType()))
+				deleteLibDir();
+		});
+	}
+
+	@Override
+	protected void initInternal() throws LifecycleException {
+		try (ZipFile zipFile = new ZipFile(zipPath.toFile(), password)) {
+			if (zipFile.isSplitArchive())
+				throw new LifecycleException("Split archives are not supported: " + zipPath);
+			for (FileHeader fileHeader : zipFile.getFileHeaders())
+				if (addEntry(fileHeader.getFileName(), fileHeader.getLastModifiedTimeEpoch(), fileHeader.getUncompressedSize(), fileHeader.getCompressedSize(), fileHeader.getCrc()))
+					fileHeaders.put(fileHeader.getFileName(), fileHeader);
+		} catch (IOException e) {
+			throw new LifecycleException(e);
+		}
+		loadManifest();
+	}
+
+	@Override
+	protected InputStream getInputStream(String name) throws IOException {
+		FileHeader fileHeader = fileHeaders.get(name);
+		if (fileHeader == null)
+			throw new IOException("Entry is not found: " + name);
+
+		long size = fileHeader.getUncompressedSize();
+		if (cacheSize == 0 || size > cacheSize / 8)
+			return openEntry(fileHeader);
+
+		byte[] bytes;
+		synchronized (cache) {
+			bytes = cache.get(name);
+		}
+		if (bytes == null) {
+			try (InputStream is = openEntry(fileHeader)) {
+				bytes = is.readAllBytes();
+			}
+			synchronized (cache) {
+				if (cache.put(name, bytes) == null)
+					cached += bytes.length;
+				for (Iterator<byte[]> it = cache.values().iterator(); cached > cacheSize && it.hasNext();) {
+					cached -= it.next().length;
+					it.remove();
+				}
+			}
+		}
+		return new ByteArrayInputStream(bytes);
+	}
+
+	private InputStream openEntry(FileHeader fileHeader) throws IOException {
+		FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ);
+		try {
+			channel.position(fileHeader.getOffsetLocalHeader());
+			ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Channels.newInputStream(channel)), password);
+			if (zis.getNextEntry(fileHeader) == null) {
+				zis.close();
+				throw new IOException("Local header is not found: " + fileHeader.getFileName());
+			}
+			return zis;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	protected synchronized Path extractJar(String name, Path libCache) throws IOException {
+		if (libDir == null) {
+			libDir = Files.createTempDirectory(TMP_DIR_PREFIX);
+			if (libDir.getFileSystem().supportedFileAttributeViews().contains("posix"))
+				Files.setPosixFilePermissions(libDir, PosixFilePermissions.fromString("rwx------"));
+			libDir.toFile().deleteOnExit();
+		}
+		Path jar = libDir.resolve(name.substring(name.lastIndexOf('/') + 1));
+		if (Files.exists(jar)) // extracted by a concurrent caller
+			return jar;
+		jar.toFile().deleteOnExit(); // before the directory (reverse order)
+		try (InputStream is = getInputStream(name)) {
+			Files.copy(is, jar);
+		}
+		return jar;
+	}
+
+	private synchronized void deleteLibDir() {
+		if (libDir != null)
+			CacheUtils.discard(libDir);
+		libDir = null;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.webresources;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.jar.JarEntry;
+
+import org.apache.catalina.webresources.AbstractArchiveResource;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Resource of the {@link AbstractEntryResourceSet}
+ */
+public class ZipResource extends AbstractArchiveResource {
+
+	private static final Log log = LogFactory.getLog(ZipResource.class);
+
+	private final AbstractEntryResourceSet set;
+
+	ZipResource(AbstractEntryResourceSet set, String webAppPath, String baseUrl, JarEntry jarEntry) {
+		super(set, webAppPath, baseUrl, jarEntry, baseUrl);
+		this.set = set;
+	}
+
+	@Override
+	protected JarInputStreamWrapper getJarInputStreamWrapper() {
+		try {
+			return new JarInputStreamWrapper(getResource(), set.getInputStream(getResource().getName()));
+		} catch (IOException e) {
+			log.debug("Unable to read entry: " + getResource().getName(), e);
+			return null;
+		}
+	}
+
+	@Override
+	public URL getURL() {
+		try {
+			return set.getURL(getResource().getName());
+		} catch (IOException e) {
+			log.debug("Unable to get URL of entry: " + getResource().getName(), e);
+			return null;
+		}
+	}
+
+	@Override
+	public URL getCodeBase() {
+		return set.getBaseUrl();
+	}
+
+	@Override
+	protected Log getLog() {
+		return log;
+	}
+}
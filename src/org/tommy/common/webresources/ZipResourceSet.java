@@ -0,0 +1,83 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.webresources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResourceRoot;
+import org.tommy.common.loader.LibCache;
+import org.tommy.common.utils.MappedZip;
+
+/**
+ * Read-only resource set over a (nested, memory-mapped) ZIP archive: the web
+ * app is served straight from the archive, stored entries without copying.
+ */
+public class ZipResourceSet extends AbstractEntryResourceSet {
+
+	private final MappedZip zip;
+
+	/**
+	 *
+	 * @param root
+	 * @param webAppMount
+	 * @param base        file system path of the archive (or of its outer archive)
+	 * @param zip         archive
+	 * @param baseUrl     base URL of the entries, e.g. "app:/"
+	 * @param libCache    directory for the extracted "WEB-INF/lib" JARs
+	 */
+	public ZipResourceSet(WebResourceRoot root, String webAppMount, String base, MappedZip zip, String baseUrl, Path libCache) {
+		super(root, webAppMount, base, baseUrl, libCache);
+		this.zip = zip;
+	}
+
+	@Override
+	protected void initInternal() throws LifecycleException {
+		for (MappedZip.Entry entry : zip.entries())
+			addEntry(entry.getName(), entry.getTime(), entry.getSize(), entry.getCompressedSize(), entry.getCrc());
+		loadManifest();
+	}
+
+	/**
+	 * Stored entries are read from the mapped archive directly
+	 */
+	@Override
+	protected InputStream getInputStream(String name) throws IOException {
+		MappedZip.Entry entry = zip.getEntry(name);
+		if (entry == null)
+			throw new IOException("Entry is not found: " + name);
+		return zip.getInputStream(entry);
+	}
+
+	@Override
+	protected Path extractJar(String name, Path libCache) throws IOException {
+		return LibCache.getCachedJar(libCache, zip, zip.getEntry(name));
+	}
+}
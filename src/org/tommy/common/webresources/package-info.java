@@ -0,0 +1 @@
+package org.tommy.common.webresources;
\ No newline at end of file
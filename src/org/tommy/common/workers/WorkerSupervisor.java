@@ -0,0 +1,324 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+package org.tommy.common.workers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.tommy.common.utils.CacheUtils;
+
+/**
+ * Runs the server in several worker JVMs that listen on the same ports with
+ * SO_REUSEPORT ("--workers"), the kernel balances the connections among them.
+ *
+ * A worker that exits is started again. When the restart file is created
+ * or touched (in an owner-only temp directory, its path is logged on start)
+ * the workers are replaced one by one (rolling restart): a new worker is
+ * started, and once it is ready (it accepts connections on the shared ports)
+ * the old one is stopped gracefully, so the ports are always served.
+ *
+ * Connections still waiting in the accept queue of the old worker's socket
+ * when it is closed are reset by Linux, unless "net.ipv4.tcp_migrate_req" is
+ * set (Linux 5.14+): they are handed over to the other workers then. So a
+ * restart under load may reset a few connections, the workers can't drain
+ * the queue as the kernel keeps routing new connections to every open
+ * socket.
+ */
+public class WorkerSupervisor {
+
+	/**
+	 * Logged by a worker when it is started
+	 */
+	public static final String READY_MESSAGE = "Tommy started.";
+
+	private static final long READY_TIMEOUT_SECONDS = 300;
+	private static final long STOP_TIMEOUT_SECONDS  = 30;
+	private static final long RESTART_DELAY_MILLIS  = 1000;
+
+	private static final String CONTROL_DIR_PREFIX = "tommy-workers-";
+	private static final String RESTART_FILE       = "restart";
+	private static final Path   MIGRATE_REQ        = Paths.get("/proc/sys/net/ipv4/tcp_migrate_req");
+
+	private final List<String> command;
+	private final Worker[]     workers; // elements replaced under the lock of this
+	private final Logger       logger;
+
+	private final CountDownLatch  stopped = new CountDownLatch(1);
+	private volatile boolean      stopping;
+	private volatile Path         controlDir;
+	private volatile WatchService watchService;
+
+	/**
+	 *
+	 * @param jarFileName Tommy JAR
+	 * @param args        arguments of the workers
+	 * @param count       number of workers
+	 * @param logger
+	 */
+	public WorkerSupervisor(String jarFileName, List<String> args, int count, Logger logger) {
+		this.logger  = logger;
+		this.workers = new Worker[count];
+
+		command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+			if (!option.startsWith("-XX:SharedArchiveFile") && !option.startsWith("-XX:ArchiveClassesAtExit") && !option.startsWith("-Xshare")) // CDS is set up by the worker's JAR loader
+				command.add(option);
+		command.add("-jar");
+		command.add(jarFileName);
+		command.addAll(args);
+	}
+
+	/**
+	 * Start the workers and supervise them until the JVM is shut down
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void run() throws IOException, InterruptedException {
+		Runtime.getRuntime().addShutdownHook(new Thread(this::stopAll));
+		Path restartFile = watchRestartFile();
+
+		synchronized (this) {
+			for (int i = 0; i < workers.length; i++)
+				workers[i] = start(i);
+		}
+		logger.log(Level.INFO, "Started " + workers.length + " workers, create or touch " + restartFile + " for a rolling restart.");
+		if (isMigrateReqOff())
+			logger.log(Level.INFO, "Connections queued on a stopped worker are reset on restarts, set the sysctl net.ipv4.tcp_migrate_req = 1 to hand them over to the other workers.");
+		stopped.await();
+	}
+
+	/**
+	 * Watch the restart file on a daemon thread, the rolling restarts run on
+	 * it one after another
+	 *
+	 * @return path of the restart file
+	 */
+	private Path watchRestartFile() throws IOException {
+		Path         dir     = Files.createTempDirectory(CONTROL_DIR_PREFIX + ProcessHandle.current().pid() + '-'); // owner-only
+		WatchService service = dir.getFileSystem().newWatchService();
+		Path         file    = dir.resolve(RESTART_FILE);
+		dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		controlDir   = dir;
+		watchService = service;
+
+		Thread thread = new Thread(() -> {
+			try {
+				for (;;) {
+					WatchKey key = service.take();
+					for (WatchEvent<?> event : key.pollEvents())
+						if (file.getFileName().equals(event.context()) && Files.deleteIfExists(file)) // one restart for the create and modify events
+							rollingRestart();
+					key.reset();
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// stopped
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Rolling restart is not available: " + e.getMessage());
+			}
+		}, "tommy-rolling-restart");
+		thread.setDaemon(true);
+		thread.start();
+		return file;
+	}
+
+	/**
+	 * @return true if Linux resets the connections queued on a closed
+	 *         SO_REUSEPORT socket instead of migrating them
+	 */
+	private static boolean isMigrateReqOff() {
+		try {
+			return Files.isReadable(MIGRATE_REQ) && "0".equals(new String(Files.readAllBytes(MIGRATE_REQ), StandardCharsets.US_ASCII).trim());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Replace the workers one by one, every new worker is ready before the old
+	 * one stops
+	 */
+	private synchronized void rollingRestart() {
+		logger.log(Level.INFO, "Rolling restart of " + workers.length + " workers.");
+		for (int i = 0; i < workers.length && !stopping; i++) {
+			Worker old = workers[i];
+			Worker worker;
+			try {
+				worker = start(i);
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Rolling restart aborted, unable to start worker " + i, e);
+				return;
+			}
+			if (!worker.awaitReady()) {
+				logger.log(Level.SEVERE, "Rolling restart aborted, worker " + i + " (PID " + worker.process.pid() + ") is not ready, the old worker is kept.");
+				worker.stop();
+				return;
+			}
+			if (stopping) {
+				worker.stop();
+				return;
+			}
+			workers[i] = worker;
+			old.stop();
+		}
+		logger.log(Level.INFO, "Rolling restart done.");
+	}
+
+	private Worker start(int index) throws IOException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectInput(ProcessBuilder.Redirect.INHERIT).start();
+		Worker  worker  = new Worker(index, process);
+		process.onExit().thenRun(() -> onExit(worker));
+		return worker;
+	}
+
+	private void onExit(Worker worker) {
+		if (stopping || worker.retired)
+			return;
+		logger.log(Level.WARNING, "Worker " + worker.index + " (PID " + worker.process.pid() + ") exited with code " + worker.process.exitValue() + ", restarting.");
+		try {
+			Thread.sleep(RESTART_DELAY_MILLIS);
+			synchronized (this) {
+				if (!stopping && workers[worker.index] == worker)
+					workers[worker.index] = start(worker.index);
+			}
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Unable to restart worker " + worker.index, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void stopAll() {
+		stopping = true;
+		List<Worker> running = new ArrayList<>();
+		for (Worker worker : workers) // no lock, a rolling restart may be waiting for a worker
+			if (worker != null)
+				running.add(worker);
+		for (Worker worker : running)
+			worker.process.destroy();
+		for (Worker worker : running)
+			worker.stop();
+		if (watchService != null)
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// stopping anyway
+			}
+		if (controlDir != null)
+			CacheUtils.discard(controlDir);
+		stopped.countDown();
+	}
+
+	/**
+	 * Worker JVM, its output is copied to the supervisor's standard output with
+	 * the worker number prepended
+	 */
+	private class Worker {
+
+		private final int                     index;
+		private final Process                 process;
+		private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+		private volatile boolean retired;
+
+		Worker(int index, Process process) {
+			this.index   = index;
+			this.process = process;
+
+			Thread output = new Thread(this::copyOutput, "tommy-worker-" + index + "-output");
+			output.setDaemon(true);
+			output.start();
+		}
+
+		private void copyOutput() {
+			String prefix = "[worker " + index + "] ";
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+				for (String line; (line = reader.readLine()) != null;) {
+					System.out.println(prefix + line);
+					if (line.contains(READY_MESSAGE))
+						ready.complete(null);
+				}
+			} catch (IOException e) {
+				// worker exited
+			}
+			ready.complete(null);
+		}
+
+		/**
+		 * @return true if the worker is started, false if it exited or timed
+		 *         out
+		 */
+		boolean awaitReady() {
+			try {
+				ready.get(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				return process.isAlive();
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Stop gracefully (SIGTERM: the connectors are closed, requests in
+		 * progress complete, connections not accepted yet are reset, see
+		 * {@link WorkerSupervisor}), kill after a timeout
+		 */
+		void stop() {
+			retired = true;
+			process.destroy();
+			try {
+				if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					logger.log(Level.WARNING, "Worker " + index + " (PID " + process.pid() + ") didn't stop in " + STOP_TIMEOUT_SECONDS + " s, killing it.");
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
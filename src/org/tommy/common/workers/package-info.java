@@ -0,0 +1 @@
+package org.tommy.common.workers;
\ No newline at end of file
@@ -35,15 +35,36 @@ import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.catalina.startup.ContextConfig;
 import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.file.ConfigurationSource;
+import org.apache.tomcat.util.scan.StandardJarScanFilter;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.tommy.common.compress.Precompressor;
+import org.tommy.common.conf.ConnectorTuning;
+import org.tommy.common.conf.TlsSettings;
+import org.tommy.common.jsp.JspPrecompiler;
+import org.tommy.common.scan.ScanCacheContextConfig;
+import org.tommy.common.threads.VirtualThreadExecutor;
 import org.tommy.common.utils.CommonUtils;
 import org.tommy.common.utils.LoggerUtils;
 import org.tommy.common.utils.ManifestUtils;
 import org.tommy.common.utils.SystemProperties;
+import org.tommy.common.valves.FirstRequestValve;
+import org.tommy.common.valves.HttpsRedirectValve;
+import org.tommy.common.webresources.AppDirWatcher;
+import org.tommy.common.webresources.PreloadedResourceRoot;
+import org.tommy.common.webresources.WebApp;
+import org.tommy.common.workers.WorkerSupervisor;
 
 /*
 The manifest file can have any name, but is commonly named manifest.json and served from the root (your website's top-level directory).
@@ -70,41 +91,268 @@ public class Main {
 	/**
 	 * print help message
 	 */
-	private static final String ARGS_HELP_OPTION         = "--help";
+	private static final String ARGS_HELP_OPTION            = "--help";
 
 	/**
-	 * run app from ZIP or WAR archive, directory or URL
+	 * run app from ZIP or WAR archive, directory or URL, optionally at the
+	 * context path ("&lt;src&gt;=/&lt;path&gt;"); repeat to run several apps
 	 */
-	private static final String ARGS_APP_OPTION          = "--app";
+	private static final String ARGS_APP_OPTION             = "--app";
 
 	/**
 	 * host name, default: localhost
 	 */
-	private static final String ARGS_HOST_OPTION         = "--host";
+	private static final String ARGS_HOST_OPTION            = "--host";
 
 	/**
 	 * HTTP TCP port number, default: 8080
 	 */
-	private static final String ARGS_PORT_OPTION         = "--port";
+	private static final String ARGS_PORT_OPTION            = "--port";
 	/**
 	 * HTTPS TCP port number, default: 8443
 	 */
-	private static final String ARGS_PORT_SSL_OPTION     = "--port-ssl";
+	private static final String ARGS_PORT_SSL_OPTION        = "--port-ssl";
+
+	/**
+	 * HTTPS key: rsa (bundled) or ec (ECDSA P-256, generated on first start)
+	 */
+	private static final String ARGS_TLS_KEY_OPTION         = "--tls-key";
+
+	/**
+	 * keystore (JKS or PKCS12) with the HTTPS key
+	 */
+	private static final String ARGS_KEYSTORE_OPTION        = "--keystore";
+
+	/**
+	 * password of the keystore
+	 */
+	private static final String ARGS_KEYSTORE_PASS_OPTION   = "--keystore-pass";
+
+	/**
+	 * number of cached TLS sessions, 0 for unlimited
+	 */
+	private static final String ARGS_TLS_CACHE_OPTION       = "--tls-cache";
+
+	/**
+	 * lifetime of the cached TLS sessions (s)
+	 */
+	private static final String ARGS_TLS_TIMEOUT_OPTION     = "--tls-timeout";
+
+	/**
+	 * resume TLS sessions with stateless tickets: on or off
+	 */
+	private static final String ARGS_TLS_TICKETS_OPTION     = "--tls-tickets";
 
 	/**
 	 * redirect HTTP to HTTPS
 	 */
-	private static final String ARGS_REDIRECT_OPTION     = "--redirect";
+	private static final String ARGS_REDIRECT_OPTION        = "--redirect";
+
+	/**
+	 * with --redirect: max-age of the Strict-Transport-Security header of the HTTPS responses (s)
+	 */
+	private static final String ARGS_HSTS_OPTION            = "--hsts";
+
+	/**
+	 * run the server in N worker JVMs sharing the ports (SO_REUSEPORT), touching the logged restart file restarts them one by one
+	 */
+	private static final String ARGS_WORKERS_OPTION         = "--workers";
+
+	/**
+	 * listen with SO_REUSEPORT, several servers can share the ports
+	 */
+	private static final String ARGS_REUSE_PORT_OPTION      = "--reuse-port";
+
+	/**
+	 * connector and thread pool preset: throughput, latency or low-memory
+	 */
+	private static final String ARGS_PROFILE_OPTION         = "--profile";
+
+	/**
+	 * maximum number of request processing threads (shared by the connectors)
+	 */
+	private static final String ARGS_MAX_THREADS_OPTION     = "--max-threads";
+
+	/**
+	 * number of request processing threads kept alive when idle
+	 */
+	private static final String ARGS_MIN_THREADS_OPTION     = "--min-threads";
+
+	/**
+	 * run the requests on virtual threads (Java 21+)
+	 */
+	private static final String ARGS_VIRTUAL_THREADS_OPTION = "--virtual-threads";
+
+	/**
+	 * maximum number of connections accepted and processed at a time
+	 */
+	private static final String ARGS_MAX_CONNECTIONS_OPTION = "--max-connections";
+
+	/**
+	 * length of the queue of incoming connections when all connections are in use
+	 */
+	private static final String ARGS_ACCEPT_COUNT_OPTION    = "--accept-count";
+
+	/**
+	 * keep-alive timeout of the connections (ms)
+	 */
+	private static final String ARGS_KEEP_ALIVE_OPTION      = "--keep-alive";
+
+	/**
+	 * maximum number of requests per keep-alive connection, -1 for unlimited
+	 */
+	private static final String ARGS_KEEP_ALIVE_MAX_OPTION  = "--keep-alive-max";
+
+	/**
+	 * socket receive and send buffer size (bytes)
+	 */
+	private static final String ARGS_SOCKET_BUFFER_OPTION   = "--socket-buffer";
+
+	/**
+	 * connector read and write buffer size (bytes)
+	 */
+	private static final String ARGS_APP_BUFFER_OPTION      = "--app-buffer";
+
+	/**
+	 * off-heap connector read and write buffers
+	 */
+	private static final String ARGS_DIRECT_BUFFERS_OPTION  = "--direct-buffers";
+
+	/**
+	 * minimal size of the static files sent with sendfile (KB), -1 disables sendfile
+	 */
+	private static final String ARGS_SENDFILE_OPTION        = "--sendfile";
+
+	/**
+	 * HTTP/2 on the plain connector too (h2c upgrade and prior knowledge)
+	 */
+	private static final String ARGS_H2C_OPTION             = "--h2c";
+
+	/**
+	 * maximum number of concurrent HTTP/2 streams per connection
+	 */
+	private static final String ARGS_H2_STREAMS_OPTION      = "--h2-streams";
+
+	/**
+	 * initial HTTP/2 flow control window of the streams (bytes)
+	 */
+	private static final String ARGS_H2_WINDOW_OPTION       = "--h2-window";
+
+	/**
+	 * weight of the HTTP/2 overhead frames, 0 disables the overhead protection
+	 */
+	private static final String ARGS_H2_OVERHEAD_OPTION     = "--h2-overhead";
+
+	/**
+	 * HTTP/2 DATA frames smaller than this count as overhead (bytes)
+	 */
+	private static final String ARGS_H2_DATA_MIN_OPTION     = "--h2-data-min";
+
+	/**
+	 * HTTP/2 WINDOW_UPDATE frames smaller than this count as overhead (bytes)
+	 */
+	private static final String ARGS_H2_UPDATE_MIN_OPTION   = "--h2-update-min";
+
+	/**
+	 * HTTP/2 CONTINUATION frames smaller than this count as overhead (bytes)
+	 */
+	private static final String ARGS_H2_CONT_MIN_OPTION     = "--h2-cont-min";
 
 	/**
 	 * context path, default: /
 	 */
-	private static final String ARGS_CONTEXT_PATH_OPTION = "--context-path";
+	private static final String ARGS_CONTEXT_PATH_OPTION    = "--context-path";
 
 	/**
 	 * provide password for encrypted ZIP or WAR archive
 	 */
-	private static final String ARGS_PASSWORD_OPTION     = "--password";
+	private static final String ARGS_PASSWORD_OPTION        = "--password";
+
+	/**
+	 * serve a copy of the app directory instead of the directory itself
+	 */
+	private static final String ARGS_APP_SNAPSHOT_OPTION    = "--app-snapshot";
+
+	/**
+	 * sync changes of app directory into running app
+	 */
+	private static final String ARGS_WATCH_OPTION           = "--watch";
+
+	/**
+	 * compile JSP files on start, reuse compiled JSP files across restarts
+	 */
+	private static final String ARGS_JSP_PRECOMPILE_OPTION  = "--jsp-precompile";
+
+	/**
+	 * record TLD and annotation scan results, replay them on later starts
+	 */
+	private static final String ARGS_SCAN_CACHE_OPTION      = "--scan-cache";
+
+	/**
+	 * gzip static text resources on start, serve them compressed, reuse them across restarts
+	 */
+	private static final String ARGS_PRECOMPRESS_OPTION     = "--precompress";
+
+	/**
+	 * serve the static files from memory: memory-mapped file shared by the JVMs, off heap
+	 */
+	private static final String ARGS_PRELOAD_APP_OPTION     = "--preload-app";
+
+	/**
+	 * don't scan JARs matching the patterns (comma separated) for TLDs and annotations
+	 */
+	private static final String ARGS_SCAN_SKIP_OPTION       = "--scan-skip";
+
+	/**
+	 * don't scan the class path (Tommy's own JARs) for TLDs, saves seconds per start with --cds
+	 */
+	private static final String ARGS_NO_CP_SCAN_OPTION      = "--no-cp-scan";
+
+	/**
+	 * size of the decrypted entry cache of encrypted app (MB)
+	 */
+	private static final String ARGS_DECRYPT_CACHE_OPTION   = "--decrypt-cache";
+
+	/**
+	 * decrypt encrypted app before start, not on demand
+	 */
+	private static final String ARGS_DECRYPT_EAGER_OPTION   = "--decrypt-eager";
+
+	/**
+	 * persistent cache of the prepared apps (downloaded, copied, decrypted)
+	 */
+	private static final String ARGS_APP_CACHE_OPTION       = "--app-cache";
+
+	/**
+	 * expected SHA-256 of the app downloaded from URL (of the preceding "--app",
+	 * of the next one if none precedes)
+	 */
+	private static final String ARGS_APP_SHA256_OPTION      = "--app-sha256";
+
+	/**
+	 * cache extracted library JARs in the directory (handled by the JAR loader)
+	 */
+	private static final String ARGS_LIB_CACHE_OPTION       = "--lib-cache";
+
+	/**
+	 * create class data sharing archive, exit after the first request (JVM is relaunched by the JAR loader)
+	 */
+	private static final String ARGS_CDS_DUMP_OPTION        = "--cds-dump";
+
+	/**
+	 * run with class data sharing archive (JVM is relaunched by the JAR loader)
+	 */
+	private static final String ARGS_CDS_OPTION             = "--cds";
+
+	/**
+	 * record class list of a training run (handled by the JAR loader)
+	 */
+	private static final String ARGS_RECORD_CLASSES_OPTION  = "--record-classes";
+
+	/**
+	 * preload classes from class list on background threads (handled by the JAR loader)
+	 */
+	private static final String ARGS_PRELOAD_CLASSES_OPTION = "--preload-classes";
 
 	//@formatter:on
 
@@ -117,19 +365,45 @@ public class Main {
 		String jarFileName = args[0];
 		specialParamCount += 1;
 
-		String  app         = null;
-		char[]  password    = null;
-		String  host        = "localhost";
-		Integer port        = null;
-		Integer sslPort     = null;
-		String  contextPath = "/";
-		boolean help        = false;
-		boolean redirect    = false;
+		List<String> apps           = new ArrayList<>();
+		List<String> appSha256s     = new ArrayList<>();
+		char[]       password       = null;
+		String       host           = "localhost";
+		Integer      port           = null;
+		Integer      sslPort        = null;
+		String       contextPath    = "/";
+		boolean      help           = false;
+		boolean      redirect       = false;
+		int          hsts           = 0;
+		boolean      cdsDump        = false;
+		boolean      appSnapshot    = false;
+		long         decryptCache   = 0;
+		boolean      decryptEager   = false;
+		Path         appCache       = null;
+		String       appSha256      = null;
+		boolean      watch          = false;
+		boolean      jspPrecompile  = false;
+		boolean      scanCache      = false;
+		boolean      precompress    = false;
+		boolean      preloadApp     = false;
+		String       scanSkip       = null;
+		boolean      noCpScan       = false;
+		String       profile        = null;
+		boolean      virtualThreads = false;
+		int          workers        = 0;
+		boolean      reusePort      = false;
+		boolean      h2c            = false;
+		boolean      directBuffers  = false;
+
+		ConnectorTuning tuning = new ConnectorTuning();
+		TlsSettings     tls    = new TlsSettings();
 
 		for (int i = 1; i < args.length; i++) {
 			if (args[i].equals(ARGS_APP_OPTION)) {
 				if (i < args.length - 1) {
-					app                = args[++i];
+					apps.add(args[++i]);
+					appSha256s.add(appSha256);
+					appSha256 = null;
 					specialParamCount += 2;
 				}
 			} else if (args[i].equals(ARGS_PASSWORD_OPTION)) {
@@ -159,12 +433,163 @@ public class Main {
 					} catch (Throwable e) {
 						// ignore exception
 					}
+			} else if (args[i].equals(ARGS_LIB_CACHE_OPTION) || args[i].equals(ARGS_CDS_OPTION) || args[i].equals(ARGS_RECORD_CLASSES_OPTION) || args[i].equals(ARGS_PRELOAD_CLASSES_OPTION)) {
+				if (i < args.length - 1)
+					i++;
+			} else if (args[i].equals(ARGS_CDS_DUMP_OPTION)) {
+				if (i < args.length - 1) {
+					i++;
+					cdsDump = true;
+				}
+			} else if (args[i].equals(ARGS_DECRYPT_CACHE_OPTION)) {
+				if (i < args.length - 1)
+					try {
+						int decryptCacheCli = Integer.parseInt(args[++i]);
+						if (decryptCacheCli >= 0)
+							decryptCache = decryptCacheCli * 1024L * 1024L;
+					} catch (Throwable e) {
+						// ignore exception
+					}
+			} else if (args[i].equals(ARGS_APP_CACHE_OPTION)) {
+				if (i < args.length - 1)
+					appCache = Paths.get(args[++i]).toAbsolutePath();
+			} else if (args[i].equals(ARGS_APP_SHA256_OPTION)) {
+				if (i < args.length - 1)
+					if (apps.isEmpty())
+						appSha256 = args[++i];
+					else
+						appSha256s.set(apps.size() - 1, args[++i]);
+			} else if (args[i].equals(ARGS_DECRYPT_EAGER_OPTION))
+				decryptEager = true;
+			else if (args[i].equals(ARGS_APP_SNAPSHOT_OPTION))
+				appSnapshot = true;
+			else if (args[i].equals(ARGS_WATCH_OPTION))
+				watch = true;
+			else if (args[i].equals(ARGS_JSP_PRECOMPILE_OPTION))
+				jspPrecompile = true;
+			else if (args[i].equals(ARGS_SCAN_CACHE_OPTION))
+				scanCache = true;
+			else if (args[i].equals(ARGS_PRECOMPRESS_OPTION))
+				precompress = true;
+			else if (args[i].equals(ARGS_PRELOAD_APP_OPTION))
+				preloadApp = true;
+			else if (args[i].equals(ARGS_SCAN_SKIP_OPTION)) {
+				if (i < args.length - 1)
+					scanSkip = args[++i];
+			} else if (args[i].equals(ARGS_NO_CP_SCAN_OPTION))
+				noCpScan = true;
+			else if (args[i].equals(ARGS_PROFILE_OPTION)) {
+				if (i < args.length - 1)
+					profile = args[++i];
+			} else if (args[i].equals(ARGS_MAX_THREADS_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setMaxThreads(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_MIN_THREADS_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setMinSpareThreads(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_WORKERS_OPTION)) {
+				if (i < args.length - 1) {
+					Integer workersCli = parseInt(args[++i], 1);
+					if (workersCli != null)
+						workers = workersCli;
+				}
+			} else if (args[i].equals(ARGS_REUSE_PORT_OPTION))
+				reusePort = true;
+			else if (args[i].equals(ARGS_VIRTUAL_THREADS_OPTION))
+				virtualThreads = true;
+			else if (args[i].equals(ARGS_MAX_CONNECTIONS_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setMaxConnections(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_ACCEPT_COUNT_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setAcceptCount(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_KEEP_ALIVE_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setKeepAliveTimeout(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_KEEP_ALIVE_MAX_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setMaxKeepAliveRequests(parseInt(args[++i], -1));
+			} else if (args[i].equals(ARGS_SOCKET_BUFFER_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setSocketBufferSize(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_APP_BUFFER_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setAppBufferSize(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_DIRECT_BUFFERS_OPTION))
+				directBuffers = true;
+			else if (args[i].equals(ARGS_SENDFILE_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setSendfileSize(parseInt(args[++i], Integer.MIN_VALUE));
+			} else if (args[i].equals(ARGS_H2C_OPTION))
+				h2c = true;
+			else if (args[i].equals(ARGS_H2_STREAMS_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setHttp2MaxConcurrentStreams(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_H2_WINDOW_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setHttp2InitialWindowSize(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_H2_OVERHEAD_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setHttp2OverheadCountFactor(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_H2_DATA_MIN_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setHttp2OverheadDataThreshold(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_H2_UPDATE_MIN_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setHttp2OverheadWindowUpdateThreshold(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_H2_CONT_MIN_OPTION)) {
+				if (i < args.length - 1)
+					tuning.setHttp2OverheadContinuationThreshold(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_TLS_KEY_OPTION)) {
+				if (i < args.length - 1)
+					tls.setKeyType(args[++i]);
+			} else if (args[i].equals(ARGS_KEYSTORE_OPTION)) {
+				if (i < args.length - 1)
+					tls.setKeystoreFile(args[++i]);
+			} else if (args[i].equals(ARGS_KEYSTORE_PASS_OPTION)) {
+				if (i < args.length - 1)
+					tls.setKeystorePassword(args[++i]);
+			} else if (args[i].equals(ARGS_TLS_CACHE_OPTION)) {
+				if (i < args.length - 1)
+					tls.setSessionCacheSize(parseInt(args[++i], 0));
+			} else if (args[i].equals(ARGS_TLS_TIMEOUT_OPTION)) {
+				if (i < args.length - 1)
+					tls.setSessionTimeout(parseInt(args[++i], 1));
+			} else if (args[i].equals(ARGS_TLS_TICKETS_OPTION)) {
+				if (i < args.length - 1) {
+					String tickets = args[++i];
+					tls.setSessionTickets("on".equals(tickets) ? Boolean.TRUE : "off".equals(tickets) ? Boolean.FALSE : null);
+				}
 			} else if (args[i].equals(ARGS_REDIRECT_OPTION))
 				redirect = true;
-			else if (args[i].equals(ARGS_HELP_OPTION))
+			else if (args[i].equals(ARGS_HSTS_OPTION)) {
+				if (i < args.length - 1) {
+					Integer hstsCli = parseInt(args[++i], 0);
+					if (hstsCli != null)
+						hsts = hstsCli;
+				}
+			} else if (args[i].equals(ARGS_HELP_OPTION))
 				help = true;
 		}
 
+		if (profile != null)
+			try {
+				tuning.applyProfile(profile);
+			} catch (IllegalArgumentException e) {
+				logger.log(Level.SEVERE, e.getMessage());
+				System.exit(1);
+			}
+
+		tuning.setReusePort(reusePort);
+		tuning.setH2c(h2c);
+		tuning.setDirectBuffers(directBuffers);
+		if (virtualThreads) {
+			if (VirtualThreadExecutor.isSupported())
+				tuning.setVirtualThreads(true);
+			else
+				logger.log(Level.WARNING, "Virtual threads are not supported by this JVM (Java 21+ required), using platform threads.");
+		}
+
 		if (sslPort == null) {
 			if (port == null)
 				port = DEFAULT_PORT_8080;
@@ -195,13 +620,58 @@ public class Main {
 				sb.append("                                                                                  \n");
 				sb.append(" Options:                                                                         \n");
 				sb.append("         --help                  print help message                               \n");
-				sb.append("         --app <file|dir|URL>    run app from ZIP or WAR archive, directory or URL\n");
+				sb.append("         --app <src>[=<path>]    run app (ZIP/WAR archive, dir or URL) [at path]  \n");
 				sb.append("         --host <host name>      host name, default: localhost                    \n");
 				sb.append("         --port <number>         HTTP TCP port number, default: 8080              \n");
 				sb.append("         --port-ssl <number>     HTTPS TCP port number, default: 8443             \n");
+				sb.append("         --tls-key <type>        HTTPS key: rsa (bundled) or ec (generated P-256) \n");
+				sb.append("         --keystore <file>       keystore (JKS or PKCS12) with the HTTPS key      \n");
+				sb.append("         --keystore-pass <pw>    password of the keystore                         \n");
+				sb.append("         --tls-cache <n>         cached TLS sessions, 0: unlimited                \n");
+				sb.append("         --tls-timeout <s>       lifetime of the cached TLS sessions              \n");
+				sb.append("         --tls-tickets on|off    resume TLS sessions with session tickets         \n");
 				sb.append("         --redirect              redirect HTTP to HTTPS                           \n");
+				sb.append("         --hsts <seconds>        HSTS max-age with --redirect                     \n");
+				sb.append("         --workers <n>           run n server processes sharing the ports         \n");
+				sb.append("         --reuse-port            listen with SO_REUSEPORT (Linux)                 \n");
+				sb.append("         --profile <name>        preset: throughput, latency or low-memory        \n");
+				sb.append("         --max-threads <n>       maximum number of request threads                \n");
+				sb.append("         --min-threads <n>       number of idle request threads kept alive        \n");
+				sb.append("         --virtual-threads       run requests on virtual threads (Java 21+)       \n");
+				sb.append("         --max-connections <n>   maximum number of open connections               \n");
+				sb.append("         --accept-count <n>      backlog of connections waiting to be accepted    \n");
+				sb.append("         --keep-alive <ms>       keep-alive timeout                               \n");
+				sb.append("         --keep-alive-max <n>    requests per keep-alive connection, -1: no limit \n");
+				sb.append("         --socket-buffer <bytes> socket receive and send buffer size              \n");
+				sb.append("         --app-buffer <bytes>    connector read and write buffer size             \n");
+				sb.append("         --direct-buffers        off-heap connector read and write buffers        \n");
+				sb.append("         --sendfile <KB>         min static file size for sendfile, -1: off       \n");
+				sb.append("         --h2c                   HTTP/2 cleartext on the HTTP port                \n");
+				sb.append("         --h2-streams <n>        max concurrent HTTP/2 streams per connection     \n");
+				sb.append("         --h2-window <bytes>     initial HTTP/2 stream flow control window        \n");
+				sb.append("         --h2-overhead <n>       HTTP/2 overhead frame weight, 0: no protection   \n");
+				sb.append("         --h2-data-min <bytes>   smaller DATA frames count as overhead            \n");
+				sb.append("         --h2-update-min <bytes> smaller WINDOW_UPDATE frames count as overhead   \n");
+				sb.append("         --h2-cont-min <bytes>   smaller CONTINUATION frames count as overhead    \n");
 				sb.append("         --context-path <string> context path, default: /                         \n");
 				sb.append("         --password <string>     provide password for encrypted ZIP or WAR archive\n");
+				sb.append("         --app-snapshot          serve copy of app directory, not directory itself\n");
+				sb.append("         --watch                 sync changes of app directory into running app   \n");
+				sb.append("         --jsp-precompile        compile JSP files on start, reuse across restarts\n");
+				sb.append("         --scan-cache            cache TLD and annotation scans across restarts   \n");
+				sb.append("         --precompress           gzip static files on start, serve them compressed\n");
+				sb.append("         --preload-app           serve static files from memory (mapped file)     \n");
+				sb.append("         --scan-skip <patterns>  don't scan JARs matching patterns (a*.jar,b.jar) \n");
+				sb.append("         --no-cp-scan            don't scan class path (Tommy JARs) for TLDs      \n");
+				sb.append("         --app-cache <dir>       reuse prepared app across restarts               \n");
+				sb.append("         --app-sha256 <hex>      expected SHA-256 of preceding --app URL download \n");
+				sb.append("         --decrypt-cache <MB>    cache decrypted entries of encrypted app         \n");
+				sb.append("         --decrypt-eager         decrypt encrypted app before start               \n");
+				sb.append("         --lib-cache <dir>       cache extracted library JARs in the directory    \n");
+				sb.append("         --cds-dump <file>       create CDS archive, exit after first request     \n");
+				sb.append("         --cds <file>            run with CDS archive                             \n");
+				sb.append("         --record-classes <file> record class list of a training run              \n");
+				sb.append("         --preload-classes <file> preload classes from class list                 \n");
 				System.out.println(sb);
 				System.exit(0);
 			}
@@ -246,36 +716,160 @@ public class Main {
 		Path   catalinaHomePath = catalinaHomeFile.toPath();
 		Path   webappsPath      = catalinaHomePath.resolve("webapps");
 		Files.createDirectories(webappsPath);
-		Path confPath     = catalinaHomePath.resolve("conf");
-		Path keystorePath = confPath.resolve("keystore");
-		Files.createDirectories(confPath);
-		Files.createDirectories(keystorePath);
-
-		Path warPath = CommonUtils.getWarPath(jarFileName, webappsPath, app, password);
-		if (warPath == null) {
-			logger.log(Level.SEVERE, "App not found.");
-			System.exit(0);
-		}
 
 		/*
-		 * context path
+		 * apps and their context paths ("<src>=/<path>", --context-path otherwise),
+		 * the embedded app is the only one
 		 */
-		contextPath = CommonUtils.getContextPath(contextPath);
+		if (apps.isEmpty() || embedded) {
+			apps       = Arrays.asList(apps.isEmpty() ? null : apps.get(0));
+			appSha256s = Arrays.asList(appSha256s.isEmpty() ? appSha256 : appSha256s.get(0));
+		}
+		String[]    appSrcs      = new String[apps.size()];
+		String[]    appSha256z   = appSha256s.toArray(new String[0]);
+		String[]    contextPaths = new String[apps.size()];
+		Set<String> seen         = new HashSet<>();
+		for (int i = 0; i < appSrcs.length; i++) {
+			String src = apps.get(i);
+			int    pos = src == null ? -1 : src.lastIndexOf("=/");
+			appSrcs[i]      = pos == -1 ? src : src.substring(0, pos);
+			contextPaths[i] = CommonUtils.getContextPath(pos == -1 ? contextPath : src.substring(pos + 1));
+			if (!seen.add(contextPaths[i])) {
+				logger.log(Level.SEVERE, "Duplicate context path: " + contextPaths[i]);
+				System.exit(1);
+			}
+		}
 
-		CommonUtils.prepareTomcatConf(confPath, keystorePath, host, port, sslPort, redirect);
+		/* key of the HTTPS connector (generated once for the workers), before any TLS connection (app download) */
+		if (sslPort != null)
+			try {
+				tls.prepare(appCache == null ? Paths.get(System.getProperty("java.io.tmpdir"), TlsSettings.CACHE_DIR) : appCache.resolve(TlsSettings.CACHE_DIR), logger);
+			} catch (IllegalArgumentException e) {
+				logger.log(Level.SEVERE, e.getMessage());
+				System.exit(1);
+			}
 
-		Tomcat tomcat = CommonUtils.prepareTomcat(logger, catalinaHome, app, argz);
+		/* supervisor: the apps are prepared once, the workers serve them */
+		if (workers > 0) {
+			List<String> workerArgs = new ArrayList<>();
+			for (int i = 0; i < appSrcs.length && !embedded; i++) {
+				Path appPath = CommonUtils.prepareApp(jarFileName, Files.createDirectories(webappsPath.resolve(Integer.toString(i))), appSrcs[i], password, appSnapshot, decryptEager, appCache, appSha256z[i]);
+				if (appPath == null) {
+					logger.log(Level.SEVERE, appSrcs[i] == null ? "App not found." : "App not found: " + appSrcs[i]);
+					System.exit(0);
+				}
+				workerArgs.add(ARGS_APP_OPTION);
+				workerArgs.add(appPath + "=" + contextPaths[i]);
+			}
+			workerArgs.add(ARGS_REUSE_PORT_OPTION);
+			for (int i = 1; i < args.length; i++)
+				if (args[i].equals(ARGS_WORKERS_OPTION) || args[i].equals(ARGS_APP_OPTION) || args[i].equals(ARGS_APP_SHA256_OPTION))
+					i++; // with value
+				else if (!args[i].equals(ARGS_APP_SNAPSHOT_OPTION) && !args[i].equals(ARGS_DECRYPT_EAGER_OPTION) && !args[i].equals(ARGS_REUSE_PORT_OPTION))
+					workerArgs.add(args[i]);
+			new WorkerSupervisor(jarFileName, workerArgs, workers, logger).run();
+			return;
+		}
+
+		WebApp[] webApps = CommonUtils.getWebApps(jarFileName, webappsPath, appSrcs, password, appSnapshot, decryptCache, decryptEager, appCache, appSha256z);
+		for (int i = 0; i < webApps.length; i++)
+			if (webApps[i] == null) {
+				logger.log(Level.SEVERE, appSrcs[i] == null ? "App not found." : "App not found: " + appSrcs[i]);
+				System.exit(0);
+			}
+
+		ConfigurationSource confSource = CommonUtils.prepareTomcatConf(host, port, sslPort, tuning, tls);
+
+		Tomcat tomcat = CommonUtils.prepareTomcat(logger, catalinaHome, appSrcs[0], argz, confSource);
 		tomcat.getServer().getCatalina().setUseShutdownHook(true);
-		org.apache.catalina.Context ctx = tomcat.addWebapp(contextPath, warPath.toString());
+
+		/* plain HTTP requests are redirected before they reach the hosts */
+		if (redirect)
+			tomcat.getEngine().getPipeline().addValve(new HttpsRedirectValve(sslPort, hsts));
+
+		/* all apps share the connectors and the server classes */
+		for (int i = 0; i < webApps.length; i++) {
+			String                      app           = appSrcs[i];
+			boolean                     watched       = watch && app != null && Files.isDirectory(Paths.get(app));
+			ContextConfig               contextConfig = scanCache ? new ScanCacheContextConfig(appCache == null ? Paths.get(System.getProperty("java.io.tmpdir"), ScanCacheContextConfig.CACHE_DIR) : appCache.resolve(ScanCacheContextConfig.CACHE_DIR), logger) : null;
+			Path                        preloadCache  = preloadApp && !watched && !webApps[i].isEncrypted() ? (appCache == null ? Paths.get(System.getProperty("java.io.tmpdir"), PreloadedResourceRoot.CACHE_DIR) : appCache.resolve(PreloadedResourceRoot.CACHE_DIR)) : null;
+			org.apache.catalina.Context ctx           = webApps[i].addTo(tomcat, contextPaths[i], contextConfig, preloadCache);
+			if (preloadApp && watched)
+				logger.log(Level.WARNING, "Static resources of the watched app directory are not preloaded: " + app);
+			else if (preloadApp && webApps[i].isEncrypted()) // the blob would hold the decrypted files
+				logger.log(Level.WARNING, app == null ? "Static resources of the encrypted app are not preloaded." : "Static resources of the encrypted app are not preloaded: " + app);
+
+			/* the class path holds Tommy's own JARs only (no TLDs to find unless the server was extended), don't scan it */
+			if (noCpScan)
+				((StandardJarScanner) ctx.getJarScanner()).setScanClassPath(false);
+			if (scanSkip != null) {
+				StandardJarScanFilter jarScanFilter = (StandardJarScanFilter) ctx.getJarScanner().getJarScanFilter();
+				jarScanFilter.setTldSkip(jarScanFilter.getTldSkip() + ',' + scanSkip);
+				jarScanFilter.setPluggabilitySkip(jarScanFilter.getPluggabilitySkip() + ',' + scanSkip);
+			}
+
+			/* JSP files are compiled on start to a persistent scratch directory: the generated sources of an encrypted app would be readable there */
+			if (jspPrecompile && !webApps[i].isEncrypted())
+				JspPrecompiler.install(ctx, appCache == null ? Paths.get(System.getProperty("java.io.tmpdir"), JspPrecompiler.CACHE_DIR) : appCache.resolve(JspPrecompiler.CACHE_DIR), logger);
+			else if (jspPrecompile)
+				logger.log(Level.WARNING, app == null ? "JSP files of the encrypted app are not precompiled." : "JSP files of the encrypted app are not precompiled: " + app);
+
+			/* hot sync of the app directory */
+			if (watched)
+				AppDirWatcher.watch(Paths.get(app), webApps[i].getDocBase(), ctx, logger);
+
+			/* static resources are compressed on start to a persistent directory: changes of a watched directory would be missed, decrypted files of an encrypted app would be readable there */
+			if (precompress && !watched && !webApps[i].isEncrypted())
+				Precompressor.install(ctx, appCache == null ? Paths.get(System.getProperty("java.io.tmpdir"), Precompressor.CACHE_DIR) : appCache.resolve(Precompressor.CACHE_DIR), logger);
+			else if (precompress && watched)
+				logger.log(Level.WARNING, "Static resources of the watched app directory are not precompressed: " + app);
+			else if (precompress)
+				logger.log(Level.WARNING, app == null ? "Static resources of the encrypted app are not precompressed." : "Static resources of the encrypted app are not precompressed: " + app);
+		}
+
+		/* CDS training run: exit after the first request, the JVM writes the archive on exit */
+		FirstRequestValve firstRequestValve = null;
+		if (cdsDump) {
+			firstRequestValve = new FirstRequestValve();
+			tomcat.getHost().getPipeline().addValve(firstRequestValve);
+		}
+
 		tomcat.start();
 
 		//logger.log(Level.CONFIG, "System Properties: " + System.getProperties());
 		//logger.log(Level.CONFIG, "Environment variables: " + System.getenv().toString());
-		//logger.log(Level.CONFIG, "WAR: " + warPath);
+		//logger.log(Level.CONFIG, "WAR: " + webApp.getDocBase());
+
+		logger.log(Level.INFO, WorkerSupervisor.READY_MESSAGE);
 
-		logger.log(Level.INFO, "Tommy started.");
+		if (firstRequestValve != null) {
+			/* plain HTTP requests are redirected before they reach the valve of the host */
+			String url = port != null && !redirect ? "http://localhost:" + port + contextPaths[0] : "https://localhost:" + sslPort + contextPaths[0];
+			if (!CommonUtils.sendRequest(logger, url)) {
+				logger.log(Level.SEVERE, "Warm-up request failed, exiting.");
+				System.exit(1);
+			}
+			firstRequestValve.await();
+			logger.log(Level.INFO, "First request served, exiting to write the CDS archive.");
+			tomcat.stop();
+			tomcat.destroy();
+			System.exit(0);
+		}
 
 		tomcat.getServer().await();
 	}
 
+	/**
+	 * @param value
+	 * @param min
+	 * @return the number, null if it is not a number or less than min
+	 */
+	private static Integer parseInt(String value, int min) {
+		try {
+			int n = Integer.parseInt(value);
+			return n >= min ? n : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Downloads from an in-process HTTP server: with and without range
+ * requests, "304 Not Modified" on the ETag, resume of an interrupted
+ * download with a truncated ".part" file, SHA-256 mismatch and concurrent
+ * downloads of the same URL.
+ *
+ * The server supports ranges for the paths starting with "/ranges".
+ */
+public class HttpDownloaderTest {
+
+	private static final int    CHUNK_SIZE = 8 * 1024 * 1024; // as HttpDownloader
+	private static final int    LENGTH     = 2 * CHUNK_SIZE + 12345;
+	private static final String ETAG       = "\"v1\"";
+
+	private static final byte[]        CONTENT       = new byte[LENGTH];
+	private static final AtomicInteger wholeRequests = new AtomicInteger();
+	private static final AtomicInteger notModified   = new AtomicInteger();
+	private static final AtomicInteger rangeRequests = new AtomicInteger();
+	private static final Set<Long>     rangeStarts   = new ConcurrentSkipListSet<>();
+
+	private static volatile long failFrom = -1; // range request to fail once
+
+	public static void main(String[] args) throws Exception {
+		new Random(42).nextBytes(CONTENT);
+		String sha256 = DigestUtils.sha256(ByteBuffer.wrap(CONTENT));
+
+		HttpServer      server   = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		server.createContext("/", HttpDownloaderTest::handle);
+		server.setExecutor(executor);
+		server.start();
+		Path dir = Files.createTempDirectory("tommy-test-");
+		try {
+			String base  = "http://localhost:" + server.getAddress().getPort();
+			Path   cache = dir.resolve("cache");
+
+			/* no range support: one GET */
+			reset();
+			new HttpDownloader(cache).download(base + "/plain.war", dir.resolve("plain.war"), sha256);
+			checkContent(dir.resolve("plain.war"));
+			check(wholeRequests.get() == 1 && rangeRequests.get() == 0, "no ranges: " + wholeRequests + " GETs, " + rangeRequests + " range GETs");
+			System.out.println("no ranges OK");
+
+			/* range support: one range request per chunk */
+			reset();
+			new HttpDownloader(cache).download(base + "/ranges.war", dir.resolve("ranges.war"), sha256);
+			checkContent(dir.resolve("ranges.war"));
+			check(wholeRequests.get() == 0 && rangeRequests.get() == 3 && rangeStarts.equals(Set.of(0L, (long) CHUNK_SIZE, 2L * CHUNK_SIZE)), "ranges: " + wholeRequests + " GETs, ranges " + rangeStarts);
+			System.out.println("ranges OK");
+
+			/* unchanged: 304 on the ETag, nothing is downloaded */
+			reset();
+			new HttpDownloader(cache).download(base + "/ranges.war", dir.resolve("again.war"), sha256);
+			checkContent(dir.resolve("again.war"));
+			check(notModified.get() == 1 && wholeRequests.get() == 0 && rangeRequests.get() == 0, "304: " + notModified + " not modified, " + wholeRequests + " GETs, " + rangeRequests + " range GETs");
+			System.out.println("304 OK");
+
+			/* interrupted on the last chunk, then the ".part" file is truncated in the middle of the second chunk */
+			reset();
+			String resumeUrl = base + "/ranges-resume.war";
+			String name      = DigestUtils.sha256(ByteBuffer.wrap(resumeUrl.getBytes(StandardCharsets.UTF_8)));
+			failFrom = 2L * CHUNK_SIZE;
+			try {
+				new HttpDownloader(cache).download(resumeUrl, dir.resolve("resume.war"), sha256);
+				check(false, "interrupted download succeeded");
+			} catch (IOException e) {
+				// expected
+			}
+			check(Files.readAllLines(cache.resolve(name + ".part.state")).size() == 3, "first two chunks are not recorded");
+			try (FileChannel channel = FileChannel.open(cache.resolve(name + ".part"), StandardOpenOption.WRITE)) {
+				channel.truncate(CHUNK_SIZE + 100);
+			}
+			reset();
+			new HttpDownloader(cache).download(resumeUrl, dir.resolve("resume.war"), sha256);
+			checkContent(dir.resolve("resume.war"));
+			check(rangeRequests.get() == 2 && rangeStarts.equals(Set.of((long) CHUNK_SIZE, 2L * CHUNK_SIZE)), "resume: ranges " + rangeStarts);
+			System.out.println("resume OK");
+
+			/* SHA-256 mismatch: neither the download nor the target is kept */
+			reset();
+			String mismatchUrl = base + "/plain-mismatch.war";
+			String wrongSha256 = (sha256.charAt(0) == '0' ? '1' : '0') + sha256.substring(1);
+			try {
+				new HttpDownloader(cache).download(mismatchUrl, dir.resolve("mismatch.war"), wrongSha256);
+				check(false, "SHA-256 mismatch is not detected");
+			} catch (IOException e) {
+				check(e.getMessage().startsWith("SHA-256 mismatch"), "unexpected exception: " + e);
+			}
+			name = DigestUtils.sha256(ByteBuffer.wrap(mismatchUrl.getBytes(StandardCharsets.UTF_8)));
+			check(!Files.exists(cache.resolve(name)) && !Files.exists(cache.resolve(name + ".part")) && !Files.exists(dir.resolve("mismatch.war")), "mismatched download is kept");
+			System.out.println("SHA-256 mismatch OK");
+
+			/* the same URL downloaded concurrently (e.g. by two "--app"): downloaded once, then 304 */
+			reset();
+			int             threads   = 4;
+			CyclicBarrier   barrier   = new CyclicBarrier(threads);
+			ExecutorService downloads = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < threads; t++) {
+					Path target = dir.resolve("shared" + t + ".war");
+					futures.add(downloads.submit(() -> {
+						barrier.await();
+						new HttpDownloader(cache).download(base + "/ranges-shared.war", target, sha256);
+						return null;
+					}));
+				}
+				for (Future<?> future : futures)
+					future.get();
+			} finally {
+				downloads.shutdownNow();
+			}
+			for (int t = 0; t < threads; t++)
+				checkContent(dir.resolve("shared" + t + ".war"));
+			check(rangeRequests.get() == 3 && notModified.get() == threads - 1, "concurrent: " + rangeRequests + " range GETs, " + notModified + " not modified");
+			System.out.println("concurrent downloads OK");
+		} finally {
+			server.stop(0);
+			executor.shutdownNow();
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	private static void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			boolean ranges = exchange.getRequestURI().getPath().startsWith("/ranges");
+			exchange.getResponseHeaders().set("ETag", ETAG);
+			if (ranges)
+				exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.getResponseHeaders().set("Content-Length", Integer.toString(LENGTH));
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if (ranges && range != null && ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+				String[] bounds = range.substring("bytes=".length()).split("-");
+				int      from   = Integer.parseInt(bounds[0]);
+				int      to     = Integer.parseInt(bounds[1]);
+				if (from == failFrom) {
+					failFrom = -1;
+					exchange.sendResponseHeaders(500, -1);
+					return;
+				}
+				rangeRequests.incrementAndGet();
+				rangeStarts.add((long) from);
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + from + '-' + to + '/' + LENGTH);
+				exchange.sendResponseHeaders(206, to + 1 - from);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(CONTENT, from, to + 1 - from);
+				}
+				return;
+			}
+
+			wholeRequests.incrementAndGet();
+			exchange.sendResponseHeaders(200, LENGTH);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(CONTENT);
+			}
+		}
+	}
+
+	private static void reset() {
+		wholeRequests.set(0);
+		notModified.set(0);
+		rangeRequests.set(0);
+		rangeStarts.clear();
+	}
+
+	private static void checkContent(Path path) throws IOException {
+		check(Arrays.equals(Files.readAllBytes(path), CONTENT), "content of " + path);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,162 @@
+/*
+MIT License
+
+Copyright (c) 2021 xnbox team
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+HOME:   https://xnbox.github.io
+E-Mail: xnbox.team@outlook.com
+*/
+
+
+package org.tommy.common.webresources;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+/**
+ * Streams the entries of an AES encrypted archive from several threads and
+ * checks the content and that neither the streams nor file handles are
+ * retained once the streams are closed, then that a "WEB-INF/lib" JAR is
+ * extracted to an owner-only directory deleted with the set.
+ */
+public class Zip4jResourceSetTest {
+
+	private static final char[] PASSWORD = "secret".toCharArray();
+	private static final int    ENTRIES  = 200;
+	private static final int    THREADS  = 8;
+	private static final int    ROUNDS   = 10;
+	private static final String LIB_JAR  = "WEB-INF/lib/lib.jar";
+
+	public static void main(String[] args) throws Exception {
+		Path dir = Files.createTempDirectory("tommy-test-");
+		try {
+			Path zip = createZip(dir);
+			for (long cacheSize : new long[] { 0, 1 << 20 }) {
+				Zip4jResourceSet set = new Zip4jResourceSet(null, "/", zip, PASSWORD, "app:/", cacheSize);
+				set.init();
+				long openFiles = countOpenFiles();
+
+				Queue<WeakReference<InputStream>> streams  = new ConcurrentLinkedQueue<>();
+				ExecutorService                   executor = Executors.newFixedThreadPool(THREADS);
+				List<Future<?>>                   futures  = new ArrayList<>();
+				try {
+					for (int t = 0; t < THREADS; t++)
+						futures.add(executor.submit(() -> {
+							for (int round = 0; round < ROUNDS; round++)
+								for (int i = 0; i < ENTRIES; i++)
+									try (InputStream is = set.getInputStream(getName(i))) {
+										streams.add(new WeakReference<>(is));
+										check(new String(is.readAllBytes(), StandardCharsets.UTF_8).equals(getContent(i)), "content of " + getName(i));
+									}
+							return null;
+						}));
+					for (Future<?> future : futures)
+						future.get();
+				} finally {
+					executor.shutdownNow();
+				}
+
+				check(countRetained(streams) == 0, countRetained(streams) + " closed streams are still reachable");
+				check(countOpenFiles() <= openFiles, "open files: " + countOpenFiles() + " > " + openFiles);
+
+				/* decrypted library JAR: owner-only directory of the set, deleted with it */
+				Path jar = Paths.get(set.getURL(LIB_JAR).toURI());
+				check(Arrays.equals(Files.readAllBytes(jar), getContent(0).getBytes(StandardCharsets.UTF_8)), "content of " + LIB_JAR);
+				check(PosixFilePermissions.toString(Files.getPosixFilePermissions(jar.getParent())).equals("rwx------"), "permissions of " + jar.getParent());
+				set.destroy();
+				check(!Files.exists(jar.getParent()), "not deleted: " + jar.getParent());
+				System.out.println("cache " + cacheSize + ": " + THREADS * ROUNDS * ENTRIES + " streams OK");
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	private static Path createZip(Path dir) throws IOException {
+		Path          zip           = dir.resolve("app.zip");
+		ZipParameters zipParameters = new ZipParameters();
+		zipParameters.setEncryptFiles(true);
+		zipParameters.setEncryptionMethod(EncryptionMethod.AES);
+		zipParameters.setAesKeyStrength(AesKeyStrength.KEY_STRENGTH_256);
+		try (ZipFile zipFile = new ZipFile(zip.toFile(), PASSWORD)) {
+			for (int i = 0; i < ENTRIES; i++) {
+				zipParameters.setFileNameInZip(getName(i));
+				zipFile.addStream(new ByteArrayInputStream(getContent(i).getBytes(StandardCharsets.UTF_8)), zipParameters);
+			}
+			zipParameters.setFileNameInZip(LIB_JAR);
+			zipFile.addStream(new ByteArrayInputStream(getContent(0).getBytes(StandardCharsets.UTF_8)), zipParameters);
+		}
+		return zip;
+	}
+
+	private static String getName(int i) {
+		return "dir" + i % 7 + "/entry" + i + ".txt";
+	}
+
+	private static String getContent(int i) {
+		return ("entry " + i + '\n').repeat(i * 13 + 1);
+	}
+
+	private static long countRetained(Queue<WeakReference<InputStream>> streams) throws InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			streams.removeIf(stream -> stream.get() == null);
+			if (streams.isEmpty())
+				break;
+			Thread.sleep(50);
+		}
+		return streams.size();
+	}
+
+	private static long countOpenFiles() throws IOException {
+		try (Stream<Path> fds = Files.list(Paths.get("/proc/self/fd"))) {
+			return fds.count();
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
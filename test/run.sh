@@ -0,0 +1,26 @@
+#!/bin/sh
+#
+# Compiles the sources and the tests and runs every "*Test" class (plain
+# main() programs, a failed check throws).
+#
+# Usage: test/run.sh [TestClass ...]
+#
+# Example: test/run.sh org.tommy.common.webresources.Zip4jResourceSetTest
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+CP=$(find "$ROOT/lib" -name '*.jar' | tr '\n' ':')
+
+javac --release 14 -encoding UTF-8 -nowarn -d "$OUT" -cp "$CP" $(find "$ROOT/src" "$ROOT/test" -name '*.java') || exit 1
+
+if [ $# -eq 0 ]; then
+	set -- $(cd "$ROOT/test" && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort)
+fi
+
+FAILED=0
+for TEST in "$@"; do
+	echo "== $TEST"
+	java -cp "$OUT:$CP" "$TEST" || FAILED=1
+done
+exit $FAILED